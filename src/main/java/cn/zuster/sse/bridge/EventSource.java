@@ -0,0 +1,45 @@
+package cn.zuster.sse.bridge;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 上游事件源
+ *
+ * 对接消息队列等上游管道时实现该接口并注册为Spring Bean，未注册时使用InMemoryEventSource。
+ * 约定：
+ * - poll返回的记录offset严格递增
+ * - commit(offset)表示offset及之前的记录都已处理完成，重启后从offset + 1开始消费
+ * - poll和commit只会在同一个线程中调用，deadLetter可能在其他线程中调用
+ */
+public interface EventSource {
+
+    /**
+     * 批量拉取记录，没有记录时最多等待timeout
+     *
+     * @param maxRecords 单批最大条数
+     * @param timeout    等待时间
+     * @return 记录，没有时返回空列表
+     * @throws InterruptedException 等待时被中断
+     */
+    List<SourceRecord> poll(int maxRecords, Duration timeout) throws InterruptedException;
+
+    /**
+     * 提交已处理完成的offset
+     *
+     * @param offset offset
+     */
+    void commit(long offset);
+
+    /**
+     * 转存超过结果保留时间仍未送达的记录，转存成功后该offset可以提交
+     *
+     * 默认不支持，记录保持未完成，之后的offset都不会被提交，重启后从该记录开始重新消费
+     *
+     * @param record 记录
+     * @return 转存成功返回true
+     */
+    default boolean deadLetter(SourceRecord record) {
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package cn.zuster.sse.bridge;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内事件源，用于测试和演示
+ *
+ * 记录只保存在内存中，已拉取未提交的记录在重启后不会重放。
+ * 超时未送达的记录转存到死信队列，可以通过getDeadLetters()查看。
+ */
+public class InMemoryEventSource implements EventSource {
+
+    private final LinkedBlockingQueue<SourceRecord> queue;
+    private final LinkedBlockingQueue<SourceRecord> deadLetters;
+
+    private long nextOffset = 0;
+    private volatile long committedOffset = -1;
+
+    /**
+     * @param capacity 未拉取记录的上限
+     */
+    public InMemoryEventSource(int capacity) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.deadLetters = new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 发布一条记录
+     *
+     * @param clientId 目标客户端ID
+     * @param topic    主题
+     * @param payload  数据
+     * @return offset，队列已满返回-1
+     */
+    public synchronized long publish(String clientId, String topic, Object payload) {
+        // 加锁保证offset顺序与入队顺序一致
+        SourceRecord record = new SourceRecord(nextOffset, clientId, topic, payload);
+        if (!queue.offer(record)) {
+            return -1;
+        }
+        return nextOffset++;
+    }
+
+    @Override
+    public List<SourceRecord> poll(int maxRecords, Duration timeout) throws InterruptedException {
+        SourceRecord first = queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<SourceRecord> batch = new ArrayList<>(Math.min(maxRecords, queue.size() + 1));
+        batch.add(first);
+        queue.drainTo(batch, maxRecords - 1);
+        return batch;
+    }
+
+    @Override
+    public void commit(long offset) {
+        committedOffset = offset;
+    }
+
+    /**
+     * 死信队列已满时返回false，记录保持未提交
+     */
+    @Override
+    public boolean deadLetter(SourceRecord record) {
+        return deadLetters.offer(record);
+    }
+
+    public List<SourceRecord> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * 已发布未提交的记录数
+     *
+     * @return 积压条数
+     */
+    public synchronized long getLag() {
+        return nextOffset - 1 - committedOffset;
+    }
+}
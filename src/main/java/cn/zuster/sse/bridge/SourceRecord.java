@@ -0,0 +1,43 @@
+package cn.zuster.sse.bridge;
+
+/**
+ * 事件源中的一条记录
+ */
+public class SourceRecord {
+    private final long offset;
+
+    /**
+     * 目标客户端ID，同一客户端的记录按offset顺序推送
+     */
+    private final String clientId;
+
+    /**
+     * 主题，增量推送时作为数据key
+     */
+    private final String topic;
+
+    private final Object payload;
+
+    public SourceRecord(long offset, String clientId, String topic, Object payload) {
+        this.offset = offset;
+        this.clientId = clientId;
+        this.topic = topic;
+        this.payload = payload;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,301 @@
+package cn.zuster.sse.bridge;
+
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.delivery.SseDelivery;
+import cn.zuster.sse.session.SseOutbound;
+import cn.zuster.sse.session.SseSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上游事件桥接：从EventSource批量拉取记录推送到SSE会话
+ *
+ * - 按clientId分区到固定的分发线程，同一客户端的记录按offset顺序入队
+ * - 记录写入连接后才算完成；客户端不在线、写出失败或连接开启ACK时交给SseDelivery（重试、重连重发），
+ *   由SseDelivery送达（写出或确认）后才算完成
+ * - 超过结果保留时间仍未送达的记录交给EventSource.deadLetter，转存成功后算完成，否则一直保持未完成
+ * - 只提交连续完成的最大offset，未完成的记录不会被提交
+ * - 正在分发的记录数达到上限时暂停拉取，不会无限堆积；交给SseDelivery的记录立即让出名额，只保留offset阻止提交，
+ *   离线或很慢的客户端不会占满名额而拖住其他客户端
+ *
+ * 默认关闭，sse.bridge.enabled=true时启动；参数在启动时读取，修改后需要重启。
+ */
+@Component
+public class SseEventBridge {
+    private static final Logger logger = LoggerFactory.getLogger(SseEventBridge.class);
+
+    /**
+     * 记录没有主题时使用的数据key
+     */
+    private static final String DEFAULT_TOPIC = "bridge";
+
+    @Autowired
+    private SseProperties properties;
+
+    @Autowired(required = false)
+    private EventSource source;
+
+    /**
+     * 已拉取未完成的offset，决定可以提交的位置
+     */
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+
+    /**
+     * 正在分发、占用名额的offset
+     */
+    private final Set<Long> dispatching = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder polled = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder handedOff = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+
+    private Semaphore permits;
+    private ExecutorService[] lanes;
+    private Thread poller;
+    private volatile boolean running = false;
+
+    // 以下两个字段只在拉取线程中写入
+    private long lastPolled = -1;
+    private volatile long committed = -1;
+
+    @PostConstruct
+    public void init() {
+        if (source == null) {
+            source = new InMemoryEventSource(properties.getBridge().getCapacity());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        SseProperties.Bridge tuning = properties.getBridge();
+        if (!tuning.isEnabled() || running) {
+            return;
+        }
+        permits = new Semaphore(tuning.getMaxInFlight());
+        lanes = new ExecutorService[tuning.getDispatchThreads()];
+        for (int i = 0; i < lanes.length; i++) {
+            final String name = "sse-bridge-dispatch-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        running = true;
+        poller = new Thread(() -> pollLoop(tuning.getBatchSize(), tuning.getPollTimeout()), "sse-bridge-poller");
+        poller.setDaemon(true);
+        poller.start();
+        logger.info("MSG: SSE bridge started | Source: {} | DispatchThreads: {} | BatchSize: {} | MaxInFlight: {} | Date: {}",
+                source.getClass().getSimpleName(), lanes.length, tuning.getBatchSize(), tuning.getMaxInFlight(), new Date());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        poller.interrupt();
+        try {
+            poller.join(TimeUnit.SECONDS.toMillis(5));
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 拉取线程已退出，在当前线程提交最后一次
+        commit();
+        logger.info("MSG: SSE bridge stopped | Committed: {} | InFlight: {} | Date: {}", committed, inFlight.size(), new Date());
+    }
+
+    public EventSource getSource() {
+        return source;
+    }
+
+    /**
+     * 桥接统计
+     *
+     * @return 统计数据
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        stats.put("polled", polled.sum());
+        stats.put("written", written.sum());
+        stats.put("handedOff", handedOff.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("unresolved", unresolved.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("dispatching", dispatching.size());
+        stats.put("committedOffset", committed);
+        stats.put("commits", commits.sum());
+        if (source instanceof InMemoryEventSource) {
+            stats.put("lag", ((InMemoryEventSource) source).getLag());
+        }
+        return stats;
+    }
+
+    private void pollLoop(int batchSize, Duration pollTimeout) {
+        while (running) {
+            try {
+                List<SourceRecord> batch = source.poll(batchSize, pollTimeout);
+                for (SourceRecord record : batch) {
+                    if (record.getClientId() == null) {
+                        // 无法路由的记录直接跳过，不阻塞提交
+                        logger.warn("MSG: SSE bridge record without clientId skipped | Offset: {}", record.getOffset());
+                        lastPolled = record.getOffset();
+                        continue;
+                    }
+                    // 背压：等待期间继续提交，让已完成的offset尽快推进
+                    while (!permits.tryAcquire(pollTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                        commit();
+                    }
+                    inFlight.add(record.getOffset());
+                    dispatching.add(record.getOffset());
+                    lastPolled = record.getOffset();
+                    polled.increment();
+                    lanes[lane(record.getClientId())].execute(() -> dispatch(record));
+                }
+                commit();
+            } catch (InterruptedException | RejectedExecutionException e) {
+                break;
+            } catch (Exception e) {
+                logger.error("MSG: SSE bridge poll error | Date: {}", new Date(), e);
+            }
+        }
+    }
+
+    private int lane(String clientId) {
+        return (clientId.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void dispatch(SourceRecord record) {
+        String clientId = record.getClientId();
+        String topic = record.getTopic() != null ? record.getTopic() : DEFAULT_TOPIC;
+        // 开启ACK的连接需要保留到确认；已有结果在等待重发时也排到其后，保持顺序
+        if (SseSession.isAckRequired(clientId) || SseDelivery.hasPending(clientId)) {
+            handOff(record, topic);
+            return;
+        }
+        boolean accepted;
+        try {
+            accepted = SseSession.send(clientId, topic, record.getPayload(), null, new SseOutbound.WriteCallback() {
+                @Override
+                public void onWritten(boolean ack) {
+                    written.increment();
+                    done(record);
+                }
+
+                @Override
+                public void onFailed() {
+                    handOff(record, topic);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("MSG: SSE bridge send error | ID: {} | Offset: {} | Error: {}", clientId, record.getOffset(), e.getMessage());
+            accepted = false;
+        }
+        if (!accepted) {
+            handOff(record, topic);
+        }
+    }
+
+    /**
+     * 交给SseDelivery重试和重连重发，offset保持未完成，直到送达或过期
+     */
+    private void handOff(SourceRecord record, String topic) {
+        handedOff.increment();
+        // 之后的重试、等待重连由SseDelivery负责，不再占用分发名额
+        release(record);
+        try {
+            SseDelivery.deliver(record.getClientId(), topic, record.getPayload(), new SseDelivery.DeliveryCallback() {
+                @Override
+                public void onDelivered() {
+                    done(record);
+                }
+
+                @Override
+                public void onExpired() {
+                    expired(record);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("MSG: SSE bridge hand off error | ID: {} | Offset: {} | Date: {}",
+                    record.getClientId(), record.getOffset(), new Date(), e);
+            expired(record);
+        }
+    }
+
+    /**
+     * 未送达的记录转存到死信，不支持或转存失败时保持未完成，该offset及之后的offset不会被提交
+     */
+    private void expired(SourceRecord record) {
+        boolean stored;
+        try {
+            stored = source.deadLetter(record);
+        } catch (RuntimeException e) {
+            logger.error("MSG: SSE bridge dead letter error | ID: {} | Offset: {} | Error: {}",
+                    record.getClientId(), record.getOffset(), e.getMessage());
+            stored = false;
+        }
+        if (stored) {
+            deadLettered.increment();
+            logger.warn("MSG: SSE bridge record dead-lettered | ID: {} | Offset: {} | Date: {}",
+                    record.getClientId(), record.getOffset(), new Date());
+            done(record);
+        } else {
+            unresolved.increment();
+            logger.error("MSG: SSE bridge record undelivered, offset stays uncommitted | ID: {} | Offset: {} | Date: {}",
+                    record.getClientId(), record.getOffset(), new Date());
+        }
+    }
+
+    private void done(SourceRecord record) {
+        inFlight.remove(record.getOffset());
+        release(record);
+    }
+
+    private void release(SourceRecord record) {
+        if (dispatching.remove(record.getOffset())) {
+            permits.release();
+        }
+    }
+
+    private void commit() {
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        long committable = oldest == null ? lastPolled : oldest - 1;
+        if (committable > committed) {
+            source.commit(committable);
+            committed = committable;
+            commits.increment();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.zuster.sse.config;
+
+import cn.zuster.sse.util.Backoff;
+import com.alibaba.cloud.nacos.registry.NacosRegistration;
+import com.alibaba.cloud.nacos.registry.NacosServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 就绪后异步注册到Nacos
+ *
+ * 配合 spring.cloud.nacos.discovery.register-enabled=false 使用：默认的自动注册在Web容器启动时同步执行，
+ * Nacos不可达时会阻塞或导致启动失败。这里改为应用就绪后在后台线程注册，失败按带抖动的指数退避重试，
+ * 节点在注册完成前就可以接收SSE连接。
+ */
+@Component
+@ConditionalOnProperty(prefix = "sse.startup", name = "async-register", havingValue = "true")
+public class AsyncDiscoveryRegistrar {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDiscoveryRegistrar.class);
+
+    @Autowired
+    private SseProperties properties;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired(required = false)
+    private NacosServiceRegistry serviceRegistry;
+
+    @Autowired(required = false)
+    private NacosRegistration registration;
+
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "sse-discovery-register");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean registered = false;
+    private int failures = 0;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() {
+        if (serviceRegistry == null || registration == null) {
+            logger.warn("MSG: Nacos registration not available, skip async register | Date: {}", new Date());
+            return;
+        }
+        // 关闭自动注册后端口不会被回填，需要在这里设置
+        if (registration.getPort() <= 0) {
+            registration.setPort(environment.getProperty("local.server.port", Integer.class, 0));
+        }
+        scheduler.execute(this::attempt);
+    }
+
+    @PreDestroy
+    public void deregister() {
+        scheduler.shutdownNow();
+        if (registered) {
+            serviceRegistry.deregister(registration);
+            logger.info("MSG: Deregistered from Nacos | Service: {} | Date: {}", registration.getServiceId(), new Date());
+        }
+    }
+
+    private void attempt() {
+        try {
+            serviceRegistry.register(registration);
+            registered = true;
+            logger.info("MSG: Registered to Nacos | Service: {} | Port: {} | Retries: {} | Date: {}",
+                    registration.getServiceId(), registration.getPort(), failures, new Date());
+        } catch (RuntimeException e) {
+            failures++;
+            SseProperties.Startup tuning = properties.getStartup();
+            long delayMs = Backoff.jitteredMillis(tuning.getRegisterRetryInterval(),
+                    tuning.getMaxRegisterRetryInterval(), failures);
+            logger.warn("MSG: Failed to register to Nacos, will retry | Retry: {} | Delay: {}ms | Error: {}",
+                    failures, delayMs, e.getMessage());
+            scheduler.schedule(this::attempt, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package cn.zuster.sse.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.zip.Deflater;
+
+/**
+ * SSE 调优参数
+ *
+ * 对应配置前缀 sse，可以放在Nacos配置或本地文件中。
+ * 配置刷新时Spring Cloud会在同一个实例上重新绑定，静态代码通过current()读取到的始终是最新值；
+ * 需要额外动作的参数（线程池大小、心跳间隔、快照容量）由SseTuningRefresher应用。
+ * 刷新时直接作用于运行中的连接，setter会把非法值（0、负数、空）修正为允许的最小值并打印警告，
+ * 错误的配置推送不会让已有连接出错。
+ */
+@Component
+@ConfigurationProperties(prefix = "sse")
+public class SseProperties {
+    private static final Logger logger = LoggerFactory.getLogger(SseProperties.class);
+
+    /**
+     * 当前生效的配置，Spring容器启动前为默认值
+     */
+    private static volatile SseProperties current = new SseProperties();
+
+    private final Heartbeat heartbeat = new Heartbeat();
+    private final Task task = new Task();
+    private final Writer writer = new Writer();
+    private final Compression compression = new Compression();
+    private final Delta delta = new Delta();
+    private final Bridge bridge = new Bridge();
+    private final Nio nio = new Nio();
+    private final Startup startup = new Startup();
+
+    public static SseProperties current() {
+        return current;
+    }
+
+    @PostConstruct
+    public void init() {
+        current = this;
+    }
+
+    private static int atLeast(String name, int value, int min) {
+        if (value < min) {
+            logger.warn("MSG: Invalid SSE tuning value, use minimum | Name: {} | Value: {} | Min: {}", name, value, min);
+            return min;
+        }
+        return value;
+    }
+
+    private static Duration atLeast(String name, Duration value, Duration min) {
+        if (value == null || value.compareTo(min) < 0) {
+            logger.warn("MSG: Invalid SSE tuning value, use minimum | Name: {} | Value: {} | Min: {}", name, value, min);
+            return min;
+        }
+        return value;
+    }
+
+    private static DataSize atLeast(String name, DataSize value, DataSize min) {
+        if (value == null || value.compareTo(min) < 0) {
+            logger.warn("MSG: Invalid SSE tuning value, use minimum | Name: {} | Value: {} | Min: {}", name, value, min);
+            return min;
+        }
+        return value;
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    public Writer getWriter() {
+        return writer;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public Delta getDelta() {
+        return delta;
+    }
+
+    public Bridge getBridge() {
+        return bridge;
+    }
+
+    public Nio getNio() {
+        return nio;
+    }
+
+    public Startup getStartup() {
+        return startup;
+    }
+
+    /**
+     * 心跳
+     */
+    public static class Heartbeat {
+        /**
+         * 心跳间隔，修改后已有连接会重新排期
+         */
+        private Duration interval = Duration.ofSeconds(5);
+
+        /**
+         * 心跳线程数
+         */
+        private int poolSize = 1;
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = atLeast("sse.heartbeat.interval", interval, Duration.ofMillis(100));
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = atLeast("sse.heartbeat.pool-size", poolSize, 1);
+        }
+    }
+
+    /**
+     * 异步任务及结果投递
+     */
+    public static class Task {
+        /**
+         * 模拟任务耗时
+         */
+        private Duration duration = Duration.ofSeconds(15);
+
+        /**
+         * 结果缓存保留时间
+         */
+        private Duration resultRetention = Duration.ofMinutes(5);
+
+        /**
+         * 发送重试最大次数
+         */
+        private int maxSendRetries = 3;
+
+        /**
+         * 首次重试间隔，之后按指数退避
+         */
+        private Duration retryInterval = Duration.ofSeconds(1);
+
+        /**
+         * 重试间隔上限
+         */
+        private Duration maxRetryInterval = Duration.ofSeconds(30);
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public void setDuration(Duration duration) {
+            this.duration = atLeast("sse.task.duration", duration, Duration.ZERO);
+        }
+
+        public Duration getResultRetention() {
+            return resultRetention;
+        }
+
+        public void setResultRetention(Duration resultRetention) {
+            this.resultRetention = atLeast("sse.task.result-retention", resultRetention, Duration.ofSeconds(1));
+        }
+
+        public int getMaxSendRetries() {
+            return maxSendRetries;
+        }
+
+        public void setMaxSendRetries(int maxSendRetries) {
+            this.maxSendRetries = atLeast("sse.task.max-send-retries", maxSendRetries, 0);
+        }
+
+        public Duration getRetryInterval() {
+            return retryInterval;
+        }
+
+        public void setRetryInterval(Duration retryInterval) {
+            this.retryInterval = atLeast("sse.task.retry-interval", retryInterval, Duration.ofMillis(10));
+        }
+
+        public Duration getMaxRetryInterval() {
+            return maxRetryInterval;
+        }
+
+        public void setMaxRetryInterval(Duration maxRetryInterval) {
+            this.maxRetryInterval = atLeast("sse.task.max-retry-interval", maxRetryInterval, Duration.ofMillis(10));
+        }
+    }
+
+    /**
+     * 出站写线程
+     */
+    public static class Writer {
+        /**
+         * 写线程数
+         */
+        private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        /**
+         * 大数据拆分的chunk字符数
+         */
+        private int chunkSize = 16 * 1024;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = atLeast("sse.writer.threads", threads, 1);
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = atLeast("sse.writer.chunk-size", chunkSize, 256);
+        }
+    }
+
+    /**
+     * gzip压缩传输，修改只对新连接生效
+     */
+    public static class Compression {
+        /**
+         * 压缩级别，高扇出场景下CPU优先
+         */
+        private int level = 1;
+
+        /**
+         * 小于该大小的事件不压缩
+         */
+        private DataSize minCompressSize = DataSize.ofBytes(32);
+
+        /**
+         * 单个连接的事件缓冲上限
+         */
+        private DataSize eventBufferSize = DataSize.ofKilobytes(16);
+
+        /**
+         * 同时存在的压缩连接上限
+         */
+        private int maxStreams = 512;
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = Math.min(Deflater.BEST_COMPRESSION, atLeast("sse.compression.level", level, Deflater.NO_COMPRESSION));
+        }
+
+        public DataSize getMinCompressSize() {
+            return minCompressSize;
+        }
+
+        public void setMinCompressSize(DataSize minCompressSize) {
+            this.minCompressSize = atLeast("sse.compression.min-compress-size", minCompressSize, DataSize.ofBytes(0));
+        }
+
+        public DataSize getEventBufferSize() {
+            return eventBufferSize;
+        }
+
+        public void setEventBufferSize(DataSize eventBufferSize) {
+            this.eventBufferSize = atLeast("sse.compression.event-buffer-size", eventBufferSize, DataSize.ofKilobytes(1));
+        }
+
+        public int getMaxStreams() {
+            return maxStreams;
+        }
+
+        public void setMaxStreams(int maxStreams) {
+            this.maxStreams = atLeast("sse.compression.max-streams", maxStreams, 0);
+        }
+    }
+
+    /**
+     * 增量推送
+     */
+    public static class Delta {
+        /**
+         * 关键帧间隔
+         */
+        private int keyframeInterval = 20;
+
+        /**
+         * 快照存储容量上限
+         */
+        private DataSize maxSnapshotSize = DataSize.ofMegabytes(64);
+
+        public int getKeyframeInterval() {
+            return keyframeInterval;
+        }
+
+        public void setKeyframeInterval(int keyframeInterval) {
+            this.keyframeInterval = atLeast("sse.delta.keyframe-interval", keyframeInterval, 1);
+        }
+
+        public DataSize getMaxSnapshotSize() {
+            return maxSnapshotSize;
+        }
+
+        public void setMaxSnapshotSize(DataSize maxSnapshotSize) {
+            this.maxSnapshotSize = atLeast("sse.delta.max-snapshot-size", maxSnapshotSize, DataSize.ofBytes(0));
+        }
+    }
+
+    /**
+     * 上游事件桥接，修改后需要重启
+     */
+    public static class Bridge {
+        /**
+         * 是否启动桥接
+         */
+        private boolean enabled = false;
+
+        /**
+         * 单次拉取的最大条数
+         */
+        private int batchSize = 256;
+
+        /**
+         * 没有记录时单次拉取的等待时间
+         */
+        private Duration pollTimeout = Duration.ofMillis(200);
+
+        /**
+         * 分发线程数，同一clientId固定由一个线程分发
+         */
+        private int dispatchThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        /**
+         * 正在分发（已拉取、未写出也未交给结果投递）的记录上限，达到后暂停拉取；
+         * 交给结果投递的记录不占用名额，只阻止提交
+         */
+        private int maxInFlight = 10000;
+
+        /**
+         * 未注册EventSource时，内存事件源的容量
+         */
+        private int capacity = 100000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = atLeast("sse.bridge.batch-size", batchSize, 1);
+        }
+
+        public Duration getPollTimeout() {
+            return pollTimeout;
+        }
+
+        public void setPollTimeout(Duration pollTimeout) {
+            this.pollTimeout = atLeast("sse.bridge.poll-timeout", pollTimeout, Duration.ofMillis(1));
+        }
+
+        public int getDispatchThreads() {
+            return dispatchThreads;
+        }
+
+        public void setDispatchThreads(int dispatchThreads) {
+            this.dispatchThreads = atLeast("sse.bridge.dispatch-threads", dispatchThreads, 1);
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = atLeast("sse.bridge.max-in-flight", maxInFlight, 1);
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = atLeast("sse.bridge.capacity", capacity, 1);
+        }
+    }
+
+    /**
+     * 非阻塞传输（/sse/nio）
+     */
+    public static class Nio {
+        /**
+         * 事件循环线程数，修改后需要重启
+         */
+        private int eventLoopThreads = 2;
+
+        /**
+         * 单个连接直接内存缓冲区的初始大小
+         */
+        private DataSize bufferSize = DataSize.ofKilobytes(8);
+
+        /**
+         * 单个连接缓冲上限，超过后断开慢客户端
+         */
+        private DataSize maxBufferSize = DataSize.ofMegabytes(1);
+
+        public int getEventLoopThreads() {
+            return eventLoopThreads;
+        }
+
+        public void setEventLoopThreads(int eventLoopThreads) {
+            this.eventLoopThreads = atLeast("sse.nio.event-loop-threads", eventLoopThreads, 1);
+        }
+
+        public DataSize getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(DataSize bufferSize) {
+            this.bufferSize = atLeast("sse.nio.buffer-size", bufferSize, DataSize.ofKilobytes(1));
+        }
+
+        public DataSize getMaxBufferSize() {
+            return maxBufferSize;
+        }
+
+        public void setMaxBufferSize(DataSize maxBufferSize) {
+            this.maxBufferSize = atLeast("sse.nio.max-buffer-size", maxBufferSize, DataSize.ofKilobytes(1));
+        }
+    }
+
+    /**
+     * 启动相关，修改后需要重启
+     */
+    public static class Startup {
+        /**
+         * 应用就绪后在后台线程注册到Nacos，注册失败不影响接收连接
+         */
+        private boolean asyncRegister = false;
+
+        /**
+         * 注册失败后首次重试间隔，之后按指数退避
+         */
+        private Duration registerRetryInterval = Duration.ofSeconds(1);
+
+        /**
+         * 注册重试间隔上限
+         */
+        private Duration maxRegisterRetryInterval = Duration.ofSeconds(30);
+
+        /**
+         * 就绪后立即退出，用于生成CDS归档的训练运行
+         */
+        private boolean exitAfterReady = false;
+
+        public boolean isAsyncRegister() {
+            return asyncRegister;
+        }
+
+        public void setAsyncRegister(boolean asyncRegister) {
+            this.asyncRegister = asyncRegister;
+        }
+
+        public Duration getRegisterRetryInterval() {
+            return registerRetryInterval;
+        }
+
+        public void setRegisterRetryInterval(Duration registerRetryInterval) {
+            this.registerRetryInterval = atLeast("sse.startup.register-retry-interval", registerRetryInterval, Duration.ofMillis(10));
+        }
+
+        public Duration getMaxRegisterRetryInterval() {
+            return maxRegisterRetryInterval;
+        }
+
+        public void setMaxRegisterRetryInterval(Duration maxRegisterRetryInterval) {
+            this.maxRegisterRetryInterval = atLeast("sse.startup.max-register-retry-interval", maxRegisterRetryInterval, Duration.ofMillis(10));
+        }
+
+        public boolean isExitAfterReady() {
+            return exitAfterReady;
+        }
+
+        public void setExitAfterReady(boolean exitAfterReady) {
+            this.exitAfterReady = exitAfterReady;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cn.zuster.sse.config;
+
+import cn.zuster.sse.bridge.SseEventBridge;
+import cn.zuster.sse.controller.SseTestController;
+import cn.zuster.sse.service.SseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+/**
+ * 启动优化
+ *
+ * lean profile开启了全局懒加载（spring.main.lazy-initialization），这里把SSE主链路上的Bean排除在外，
+ * 首个/sse/start不需要再初始化它们；其他控制器（如ConfigController）在首次访问时才创建。
+ */
+@Configuration
+public class SseStartupConfig {
+    private static final Logger logger = LoggerFactory.getLogger(SseStartupConfig.class);
+
+    @Bean
+    public static LazyInitializationExcludeFilter sseEagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SseProperties.class, SseTuningRefresher.class,
+                SseService.class, SseTestController.class, SseEventBridge.class, AsyncDiscoveryRegistrar.class);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady(ApplicationReadyEvent event) {
+        long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        logger.info("MSG: SSE node ready | Uptime: {}ms | Date: {}", uptimeMs, new Date());
+        if (SseProperties.current().getStartup().isExitAfterReady()) {
+            // CDS训练运行：加载完启动期用到的类后退出，由JVM在退出时写出归档
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
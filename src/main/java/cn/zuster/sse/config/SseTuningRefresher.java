@@ -0,0 +1,35 @@
+package cn.zuster.sse.config;
+
+import cn.zuster.sse.delta.SseDelta;
+import cn.zuster.sse.session.SseOutbound;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+
+/**
+ * 启动及配置刷新后应用SSE调优参数
+ *
+ * RefreshScopeRefreshedEvent在SseProperties重新绑定之后发布，此时读取到的是新值，已有连接不受影响。
+ */
+@Component
+public class SseTuningRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(SseTuningRefresher.class);
+
+    @Autowired
+    private SseProperties properties;
+
+    @EventListener({ApplicationReadyEvent.class, RefreshScopeRefreshedEvent.class})
+    public void apply() {
+        SseOutbound.resizeWriters(properties.getWriter().getThreads());
+        SseDelta.setMaxSnapshotBytes(properties.getDelta().getMaxSnapshotSize().toBytes());
+        logger.info("MSG: SSE tuning applied | WriterThreads: {} | HeartbeatInterval: {} | MaxSnapshotSize: {} | Date: {}",
+                properties.getWriter().getThreads(), properties.getHeartbeat().getInterval(),
+                properties.getDelta().getMaxSnapshotSize(), new Date());
+    }
+}
@@ -11,6 +11,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * SSE测试控制器
  *
@@ -31,15 +36,83 @@ public class SseTestController {
     @RequestMapping("start")
     public ResponseEntity<SseEmitter> start(
             @RequestParam String clientId,
-            @RequestParam(required = false, defaultValue = "false") Boolean autoCloseAfterData) {
+            @RequestParam(required = false, defaultValue = "false") Boolean autoCloseAfterData,
+            @RequestParam(required = false, defaultValue = "false") Boolean delta,
+            @RequestParam(required = false, defaultValue = "false") Boolean ack) {
         
-        SseEmitter emitter = sseService.start(clientId, autoCloseAfterData);
+        SseEmitter emitter = sseService.start(clientId, autoCloseAfterData, delta, ack);
+        return ResponseEntity
+                .ok()
+                .contentType(SseEmitterUTF8.UTF8_TEXT_EVENT_STREAM)
+                .body(emitter);
+    }
+
+    /**
+     * 开始非阻塞SSE连接，参数与start相同；由事件循环在连接可写时写出，不占用写线程等待慢客户端
+     */
+    @RequestMapping("nio")
+    public void nio(
+            @RequestParam String clientId,
+            @RequestParam(required = false, defaultValue = "false") Boolean autoCloseAfterData,
+            @RequestParam(required = false, defaultValue = "false") Boolean delta,
+            @RequestParam(required = false, defaultValue = "false") Boolean ack,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        sseService.startNio(clientId, autoCloseAfterData, delta, ack, request, response);
+    }
+
+    /**
+     * 开始多路复用SSE连接，一个连接承载多个逻辑流，数据格式为 {"stream": clientId, "data": 数据}
+     */
+    @RequestMapping("mux")
+    public ResponseEntity<SseEmitter> mux(
+            @RequestParam String connectionId,
+            @RequestParam(required = false, defaultValue = "false") Boolean delta,
+            @RequestParam(required = false, defaultValue = "false") Boolean ack) {
+
+        SseEmitter emitter = sseService.startMux(connectionId, delta, ack);
         return ResponseEntity
                 .ok()
                 .contentType(SseEmitterUTF8.UTF8_TEXT_EVENT_STREAM)
                 .body(emitter);
     }
 
+    /**
+     * 在已有的多路复用连接上订阅逻辑流，无需重连
+     *
+     * @param connectionId
+     * @param clientId
+     * @return
+     */
+    @RequestMapping("/subscribe")
+    public String subscribe(@RequestParam String connectionId, @RequestParam String clientId) {
+        return sseService.subscribe(connectionId, clientId);
+    }
+
+    /**
+     * 在已有的多路复用连接上退订逻辑流
+     *
+     * @param connectionId
+     * @param clientId
+     * @return
+     */
+    @RequestMapping("/unsubscribe")
+    public String unsubscribe(@RequestParam String connectionId, @RequestParam String clientId) {
+        return sseService.unsubscribe(connectionId, clientId);
+    }
+
+    /**
+     * 关闭多路复用连接及其上的全部逻辑流
+     *
+     * @param connectionId
+     * @return
+     */
+    @RequestMapping("/mux/end")
+    public String closeMux(String connectionId) {
+        return sseService.closeMux(connectionId);
+    }
+
     /**
      * 将SseEmitter对象设置成完成
      *
@@ -50,4 +123,49 @@ public class SseTestController {
     public String close(String clientId) {
         return sseService.close(clientId);
     }
+
+    /**
+     * 确认收到结果，仅对ack=true建立的连接有意义
+     *
+     * @param clientId
+     * @param eventId
+     * @return
+     */
+    @RequestMapping("/ack")
+    public String ack(String clientId, String eventId) {
+        return sseService.ack(clientId, eventId);
+    }
+
+    /**
+     * 向内存事件源发布事件，需开启 sse.bridge.enabled
+     *
+     * @param clientId
+     * @param topic
+     * @param data
+     * @return
+     */
+    @RequestMapping("/publish")
+    public String publish(String clientId, String topic, String data) {
+        return sseService.publish(clientId, topic, data);
+    }
+
+    /**
+     * 事件桥接统计：拉取数、写出数、移交重发数、已提交offset
+     *
+     * @return
+     */
+    @RequestMapping("/bridge/stats")
+    public Map<String, Object> bridgeStats() {
+        return sseService.bridgeStats();
+    }
+
+    /**
+     * 结果投递统计：送达数、重发率、投递延迟
+     *
+     * @return
+     */
+    @RequestMapping("/stats")
+    public Map<String, Object> stats() {
+        return sseService.deliveryStats();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,334 @@
+package cn.zuster.sse.delivery;
+
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.session.SseOutbound;
+import cn.zuster.sse.session.SseSession;
+import cn.zuster.sse.util.Backoff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 结果投递
+ *
+ * 每条结果分配事件ID并保存到确认或过期为止：
+ * - 发送失败（会话不存在、写出失败）按带抖动的指数退避定时重试，不占用等待线程
+ * - 连接开启ACK时，写出后仍保留，直到客户端调用 /sse/ack 确认
+ * - 客户端重连时只重发未确认的结果
+ */
+public class SseDelivery {
+    private static final Logger logger = LoggerFactory.getLogger(SseDelivery.class);
+
+    /**
+     * 重试、过期使用的定时线程，只做调度，不执行阻塞操作
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "sse-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 事件ID前缀，避免重启后与客户端已确认的ID重复
+     */
+    private static final String ID_PREFIX = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    /**
+     * 未完成的投递：clientId -> (eventId -> 投递)，保持产生顺序，重连时按原顺序重发
+     */
+    private static final Map<String, Map<String, Delivery>> PENDING = new ConcurrentHashMap<>();
+
+    private static final LongAdder DELIVERED = new LongAdder();
+    private static final LongAdder ATTEMPTS = new LongAdder();
+    private static final LongAdder REDELIVERIES = new LongAdder();
+    private static final LongAdder EXPIRED = new LongAdder();
+    private static final LongAdder LATENCY_TOTAL_MS = new LongAdder();
+    private static final AtomicLong LATENCY_MAX_MS = new AtomicLong();
+
+    private SseDelivery() {
+    }
+
+    /**
+     * 投递一条结果
+     *
+     * @param clientId 客户端ID
+     * @param key      数据key，增量推送时使用
+     * @param payload  结果数据
+     * @return 事件ID
+     */
+    public static String deliver(String clientId, String key, Object payload) {
+        return deliver(clientId, key, payload, null);
+    }
+
+    /**
+     * 投递一条结果，送达或过期后回调
+     *
+     * @param clientId 客户端ID
+     * @param key      数据key，增量推送时使用
+     * @param payload  结果数据
+     * @param callback 送达（写出或确认）或过期后回调，可以为null
+     * @return 事件ID
+     */
+    public static String deliver(String clientId, String key, Object payload, DeliveryCallback callback) {
+        String eventId = ID_PREFIX + "-" + SEQ.incrementAndGet();
+        Delivery delivery = new Delivery(clientId, eventId, key, payload, callback);
+        PENDING.compute(clientId, (k, deliveries) -> {
+            if (deliveries == null) {
+                deliveries = Collections.synchronizedMap(new LinkedHashMap<>());
+            }
+            deliveries.put(eventId, delivery);
+            return deliveries;
+        });
+
+        long retentionMs = SseProperties.current().getTask().getResultRetention().toMillis();
+        delivery.expiry = SCHEDULER.schedule(() -> expire(delivery), retentionMs, TimeUnit.MILLISECONDS);
+
+        attempt(delivery, false);
+        return eventId;
+    }
+
+    /**
+     * 是否有未完成的投递
+     *
+     * @param clientId 客户端ID
+     * @return 有未完成的投递返回true
+     */
+    public static boolean hasPending(String clientId) {
+        Map<String, Delivery> deliveries = PENDING.get(clientId);
+        return deliveries != null && !deliveries.isEmpty();
+    }
+
+    /**
+     * 重连后重发所有未确认的结果
+     *
+     * @param clientId 客户端ID
+     * @return 重发条数
+     */
+    public static int redeliver(String clientId) {
+        List<Delivery> deliveries;
+        Map<String, Delivery> pending = PENDING.get(clientId);
+        if (pending == null) {
+            return 0;
+        }
+        synchronized (pending) {
+            deliveries = new ArrayList<>(pending.values());
+        }
+        for (Delivery delivery : deliveries) {
+            synchronized (delivery) {
+                // 新连接重新计算重试次数
+                cancel(delivery.retry);
+                delivery.retry = null;
+                delivery.failures = 0;
+            }
+            attempt(delivery, true);
+        }
+        if (!deliveries.isEmpty()) {
+            logger.info("MSG: Redelivered unacknowledged results | ID: {} | Count: {} | Date: {}",
+                    clientId, deliveries.size(), new Date());
+        }
+        return deliveries.size();
+    }
+
+    /**
+     * 客户端确认收到
+     *
+     * @param clientId 客户端ID
+     * @param eventId  事件ID
+     * @return 存在未确认的投递返回true
+     */
+    public static boolean ack(String clientId, String eventId) {
+        Map<String, Delivery> pending = PENDING.get(clientId);
+        Delivery delivery = pending == null ? null : pending.get(eventId);
+        if (delivery == null) {
+            return false;
+        }
+        complete(delivery);
+        return true;
+    }
+
+    /**
+     * 投递统计
+     *
+     * @return 统计数据
+     */
+    public static Map<String, Object> stats() {
+        long delivered = DELIVERED.sum();
+        long attempts = ATTEMPTS.sum();
+        long redeliveries = REDELIVERIES.sum();
+        int pending = 0;
+        for (Map<String, Delivery> deliveries : PENDING.values()) {
+            pending += deliveries.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("delivered", delivered);
+        stats.put("pending", pending);
+        stats.put("expired", EXPIRED.sum());
+        stats.put("attempts", attempts);
+        stats.put("redeliveries", redeliveries);
+        stats.put("redeliveryRate", attempts == 0 ? 0D : (double) redeliveries / attempts);
+        stats.put("avgLatencyMs", delivered == 0 ? 0L : LATENCY_TOTAL_MS.sum() / delivered);
+        stats.put("maxLatencyMs", LATENCY_MAX_MS.get());
+        return stats;
+    }
+
+    private static void attempt(Delivery delivery, boolean redelivery) {
+        int attempts;
+        synchronized (delivery) {
+            if (delivery.done) {
+                return;
+            }
+            attempts = ++delivery.attempts;
+        }
+        ATTEMPTS.increment();
+        if (redelivery || attempts > 1) {
+            REDELIVERIES.increment();
+        }
+
+        boolean accepted = SseSession.send(delivery.clientId, delivery.key, delivery.payload, delivery.eventId,
+                new SseOutbound.WriteCallback() {
+                    @Override
+                    public void onWritten(boolean ack) {
+                        // 未开启ACK的连接写出即视为送达，开启ACK的等待确认或重连重发；
+                        // 以写出该帧的连接为准，写出前客户端换成了其他连接也不会误判
+                        if (!ack) {
+                            complete(delivery);
+                        }
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        scheduleRetry(delivery);
+                    }
+                });
+        if (!accepted) {
+            scheduleRetry(delivery);
+        }
+    }
+
+    private static void scheduleRetry(Delivery delivery) {
+        SseProperties.Task tuning = SseProperties.current().getTask();
+        synchronized (delivery) {
+            if (delivery.done) {
+                return;
+            }
+            delivery.failures++;
+            if (delivery.failures >= tuning.getMaxSendRetries()) {
+                // 重试用尽后保留结果，等待客户端重连时重发
+                logger.warn("MSG: Failed to deliver result after retries, keep for reconnect | ID: {} | EventId: {} | Date: {}",
+                        delivery.clientId, delivery.eventId, new Date());
+                return;
+            }
+            long delayMs = Backoff.jitteredMillis(tuning.getRetryInterval(), tuning.getMaxRetryInterval(),
+                    delivery.failures);
+            logger.warn("MSG: Failed to send result, will retry | ID: {} | EventId: {} | Retry: {} | Delay: {}ms",
+                    delivery.clientId, delivery.eventId, delivery.failures, delayMs);
+            delivery.retry = SCHEDULER.schedule(() -> attempt(delivery, false), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void complete(Delivery delivery) {
+        synchronized (delivery) {
+            if (delivery.done) {
+                return;
+            }
+            delivery.done = true;
+            cancel(delivery.retry);
+            cancel(delivery.expiry);
+        }
+        removePending(delivery);
+        long latencyMs = System.currentTimeMillis() - delivery.createdAt;
+        DELIVERED.increment();
+        LATENCY_TOTAL_MS.add(latencyMs);
+        LATENCY_MAX_MS.accumulateAndGet(latencyMs, Math::max);
+        logger.info("MSG: Result delivered | ID: {} | EventId: {} | Attempts: {} | Latency: {}ms",
+                delivery.clientId, delivery.eventId, delivery.attempts, latencyMs);
+        if (delivery.callback != null) {
+            delivery.callback.onDelivered();
+        }
+    }
+
+    private static void expire(Delivery delivery) {
+        synchronized (delivery) {
+            if (delivery.done) {
+                return;
+            }
+            delivery.done = true;
+            cancel(delivery.retry);
+        }
+        removePending(delivery);
+        EXPIRED.increment();
+        logger.info("MSG: Cleaned up undelivered result | ID: {} | EventId: {} | Date: {}",
+                delivery.clientId, delivery.eventId, new Date());
+        if (delivery.callback != null) {
+            delivery.callback.onExpired();
+        }
+    }
+
+    private static void removePending(Delivery delivery) {
+        PENDING.computeIfPresent(delivery.clientId, (clientId, deliveries) -> {
+            deliveries.remove(delivery.eventId);
+            return deliveries.isEmpty() ? null : deliveries;
+        });
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 投递结果回调，在写线程或定时线程中执行，实现需要尽快返回
+     */
+    public interface DeliveryCallback {
+        /**
+         * 已送达：未开启ACK的连接写出，或客户端已确认
+         */
+        void onDelivered();
+
+        /**
+         * 超过结果保留时间仍未送达，已不再重发
+         */
+        void onExpired();
+    }
+
+    private static class Delivery {
+        private final String clientId;
+        private final String eventId;
+        private final String key;
+        private final Object payload;
+        private final DeliveryCallback callback;
+        private final long createdAt = System.currentTimeMillis();
+        private int attempts = 0;
+        private int failures = 0;
+        private boolean done = false;
+        private ScheduledFuture<?> retry;
+        private ScheduledFuture<?> expiry;
+
+        Delivery(String clientId, String eventId, String key, Object payload, DeliveryCallback callback) {
+            this.clientId = clientId;
+            this.eventId = eventId;
+            this.key = key;
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cn.zuster.sse.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * JSON差异计算，输出JSON Patch（RFC 6902）子集
+ *
+ * 只对对象做逐字段比较，数组和标量整体replace，操作只有add、remove、replace。
+ */
+public class JsonDiff {
+
+    private JsonDiff() {
+    }
+
+    /**
+     * 计算source到target的patch
+     *
+     * @param source 上一次发送的快照
+     * @param target 本次数据
+     * @return patch操作数组，无变化时为空数组
+     */
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode ops = JsonNodeFactory.instance.arrayNode();
+        diff("", source, target, ops);
+        return ops;
+    }
+
+    private static void diff(String path, JsonNode source, JsonNode target, ArrayNode ops) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (!source.isObject() || !target.isObject()) {
+            op(ops, "replace", path).set("value", target);
+            return;
+        }
+        Iterator<String> sourceFields = source.fieldNames();
+        while (sourceFields.hasNext()) {
+            String field = sourceFields.next();
+            if (!target.has(field)) {
+                op(ops, "remove", path + "/" + escape(field));
+            }
+        }
+        Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+        while (targetFields.hasNext()) {
+            Map.Entry<String, JsonNode> entry = targetFields.next();
+            String fieldPath = path + "/" + escape(entry.getKey());
+            JsonNode sourceValue = source.get(entry.getKey());
+            if (sourceValue == null) {
+                op(ops, "add", fieldPath).set("value", entry.getValue());
+            } else {
+                diff(fieldPath, sourceValue, entry.getValue(), ops);
+            }
+        }
+    }
+
+    /**
+     * 粗略估算节点占用的内存字节数，用于快照存储的容量控制
+     *
+     * @param node JSON节点
+     * @return 估算字节数
+     */
+    public static long estimateBytes(JsonNode node) {
+        long bytes = 16;
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fields.next();
+                bytes += 2L * entry.getKey().length() + estimateBytes(entry.getValue());
+            }
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                bytes += estimateBytes(element);
+            }
+        } else if (node.isTextual()) {
+            bytes += 2L * node.textValue().length();
+        } else {
+            bytes += 8;
+        }
+        return bytes;
+    }
+
+    private static ObjectNode op(ArrayNode ops, String op, String path) {
+        ObjectNode node = ops.addObject();
+        node.put("op", op);
+        node.put("path", path);
+        return node;
+    }
+
+    private static String escape(String field) {
+        return field.replace("~", "~0").replace("/", "~1");
+    }
+}
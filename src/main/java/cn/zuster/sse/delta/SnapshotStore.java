@@ -0,0 +1,115 @@
+package cn.zuster.sse.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 已发送快照存储，按估算字节数限制总容量，超出后淘汰最久未使用的快照
+ *
+ * 快照被淘汰后，对应key的下一次发送会退化为关键帧。
+ */
+public class SnapshotStore {
+
+    private long maxBytes;
+    private long usedBytes = 0;
+
+    /**
+     * clientId + key -> 快照，按访问顺序排列
+     */
+    private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * clientId -> 该客户端的全部存储key，断开时按客户端清理
+     */
+    private final Map<String, Set<String>> clientKeys = new HashMap<>();
+
+    public SnapshotStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized Snapshot get(String clientId, String key) {
+        return snapshots.get(storeKey(clientId, key));
+    }
+
+    public synchronized void put(String clientId, String key, Snapshot snapshot) {
+        String storeKey = storeKey(clientId, key);
+        Snapshot old = snapshots.put(storeKey, snapshot);
+        if (old != null) {
+            usedBytes -= old.bytes;
+        } else {
+            clientKeys.computeIfAbsent(clientId, k -> new HashSet<>()).add(storeKey);
+        }
+        usedBytes += snapshot.bytes;
+
+        Iterator<Map.Entry<String, Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Snapshot> eldest = iterator.next();
+            usedBytes -= eldest.getValue().bytes;
+            iterator.remove();
+            Set<String> keys = clientKeys.get(eldest.getValue().clientId);
+            if (keys != null) {
+                keys.remove(eldest.getKey());
+                if (keys.isEmpty()) {
+                    clientKeys.remove(eldest.getValue().clientId);
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除客户端的全部快照
+     *
+     * @param clientId 客户端ID
+     */
+    public synchronized void removeClient(String clientId) {
+        Set<String> keys = clientKeys.remove(clientId);
+        if (keys == null) {
+            return;
+        }
+        for (String storeKey : keys) {
+            Snapshot snapshot = snapshots.remove(storeKey);
+            if (snapshot != null) {
+                usedBytes -= snapshot.bytes;
+            }
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    private static String storeKey(String clientId, String key) {
+        return clientId + '\u0000' + key;
+    }
+
+    /**
+     * 快照及自上一个关键帧以来发送的patch数
+     */
+    public static class Snapshot {
+        final String clientId;
+        final JsonNode node;
+        final int patchesSinceKeyframe;
+        final long bytes;
+
+        Snapshot(String clientId, JsonNode node, int patchesSinceKeyframe) {
+            this.clientId = clientId;
+            this.node = node;
+            this.patchesSinceKeyframe = patchesSinceKeyframe;
+            this.bytes = JsonDiff.estimateBytes(node);
+        }
+    }
+}
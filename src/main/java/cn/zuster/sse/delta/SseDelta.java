@@ -0,0 +1,84 @@
+package cn.zuster.sse.delta;
+
+import cn.zuster.sse.config.SseProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 增量推送编码
+ *
+ * 服务端按 连接作用域（SseOutbound.deltaScope） + key 保存上一次发送的快照，后续发送只推送JSON Patch，
+ * 每keyframe-interval次或快照被淘汰、客户端重连后推送完整的关键帧。
+ *
+ * 关键帧：{"delta":"snapshot","key":"result","value":{...}}
+ * 增量帧：{"delta":"patch","key":"result","ops":[{"op":"replace","path":"/timestamp","value":1}]}
+ */
+public class SseDelta {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final SnapshotStore STORE =
+            new SnapshotStore(SseProperties.current().getDelta().getMaxSnapshotSize().toBytes());
+
+    private SseDelta() {
+    }
+
+    /**
+     * 编码一次更新，调用方需保证同一连接的编码和入队顺序一致
+     *
+     * @param scope    连接作用域，见SseOutbound.deltaScope
+     * @param key      数据key
+     * @param msg      完整数据
+     * @return 关键帧或增量帧
+     */
+    public static ObjectNode encode(String scope, String key, Object msg) {
+        JsonNode target = MAPPER.valueToTree(msg);
+        SnapshotStore.Snapshot previous = STORE.get(scope, key);
+
+        ObjectNode event = MAPPER.createObjectNode();
+        // 连续发送的patch数达到关键帧间隔后强制发送关键帧
+        int keyframeInterval = SseProperties.current().getDelta().getKeyframeInterval();
+        if (previous == null || previous.patchesSinceKeyframe + 1 >= keyframeInterval) {
+            event.put("delta", "snapshot");
+            event.put("key", key);
+            event.set("value", target);
+            STORE.put(scope, key, new SnapshotStore.Snapshot(scope, target, 0));
+        } else {
+            ArrayNode ops = JsonDiff.diff(previous.node, target);
+            event.put("delta", "patch");
+            event.put("key", key);
+            event.set("ops", ops);
+            STORE.put(scope, key, new SnapshotStore.Snapshot(scope, target, previous.patchesSinceKeyframe + 1));
+        }
+        return event;
+    }
+
+    /**
+     * 清除连接作用域的全部快照（断开、退订时调用，释放容量）
+     *
+     * @param scope    连接作用域，见SseOutbound.deltaScope
+     */
+    public static void reset(String scope) {
+        STORE.removeClient(scope);
+    }
+
+    /**
+     * 调整快照存储容量，下一次写入时按新容量淘汰
+     *
+     * @param maxBytes 容量上限（估算字节数）
+     */
+    public static void setMaxSnapshotBytes(long maxBytes) {
+        STORE.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * 当前快照占用的估算字节数
+     *
+     * @return 字节数
+     */
+    public static long getSnapshotBytes() {
+        return STORE.getUsedBytes();
+    }
+}
@@ -0,0 +1,199 @@
+package cn.zuster.sse.filter;
+
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.util.GzipEventOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE压缩传输过滤器
+ *
+ * 仅对 /sse/start?compress=true 且客户端支持gzip的请求生效。
+ * 每个连接持有一个长期存在的Deflater，每个事件结束时SYNC_FLUSH。
+ */
+@Component
+public class SseCompressionFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(SseCompressionFilter.class);
+
+    private static final String STREAM_ATTRIBUTE = SseCompressionFilter.class.getName() + ".STREAM";
+
+    private static final AtomicInteger ACTIVE_STREAMS = new AtomicInteger();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return !request.getRequestURI().endsWith("/sse/start")
+                || !Boolean.parseBoolean(request.getParameter("compress"))
+                || acceptEncoding == null
+                || !acceptEncoding.contains("gzip");
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // emitter完成后的异步分派需要写出gzip尾部
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                GzipEventOutputStream stream = (GzipEventOutputStream) request.getAttribute(STREAM_ATTRIBUTE);
+                if (stream != null && !request.isAsyncStarted()) {
+                    try {
+                        stream.finish();
+                    } finally {
+                        release(stream);
+                    }
+                }
+            }
+            return;
+        }
+
+        // 每个Deflater约占用256KB native内存，超出上限后退化为不压缩
+        SseProperties.Compression compression = SseProperties.current().getCompression();
+        if (ACTIVE_STREAMS.incrementAndGet() > compression.getMaxStreams()) {
+            ACTIVE_STREAMS.decrementAndGet();
+            logger.warn("MSG: Compressed stream limit reached, fallback to identity | Limit: {} | Date: {}",
+                    compression.getMaxStreams(), new Date());
+            chain.doFilter(request, response);
+            return;
+        }
+
+        GzipEventOutputStream stream;
+        try {
+            stream = new GzipEventOutputStream(response.getOutputStream(), compression.getLevel(),
+                    (int) compression.getMinCompressSize().toBytes(), (int) compression.getEventBufferSize().toBytes());
+        } catch (IOException | RuntimeException e) {
+            ACTIVE_STREAMS.decrementAndGet();
+            throw e;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        request.setAttribute(STREAM_ATTRIBUTE, stream);
+
+        try {
+            chain.doFilter(request, new GzipResponseWrapper(response, stream));
+        } finally {
+            if (request.isAsyncStarted()) {
+                // 超时、出错时不会有正常的尾部写出，只释放Deflater
+                request.getAsyncContext().addListener(new ReleaseListener(stream));
+            } else {
+                try {
+                    stream.finish();
+                } finally {
+                    release(stream);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前压缩连接数
+     *
+     * @return 压缩连接数
+     */
+    public static int getActiveStreamCount() {
+        return ACTIVE_STREAMS.get();
+    }
+
+    private static void release(GzipEventOutputStream stream) {
+        if (stream.end()) {
+            ACTIVE_STREAMS.decrementAndGet();
+            logger.info("MSG: Compressed stream closed | Raw: {} | Compressed: {} | Active: {}",
+                    stream.getRawBytes(), stream.getCompressedBytes(), ACTIVE_STREAMS.get());
+        }
+    }
+
+    /**
+     * 把输出流替换为gzip流，flushBuffer作为事件边界
+     */
+    private static class GzipResponseWrapper extends HttpServletResponseWrapper {
+        private final GzipEventOutputStream stream;
+        private PrintWriter writer;
+
+        GzipResponseWrapper(HttpServletResponse response, GzipEventOutputStream stream) {
+            super(response);
+            this.stream = stream;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            // SseEmitter每写完事件的一个部分调用一次flushBuffer，由gzip流按结尾空行判断事件边界
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.flushEvent();
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            // 压缩后长度未知，忽略
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            // 压缩后长度未知，忽略
+        }
+    }
+
+    private static class ReleaseListener implements AsyncListener {
+        private final GzipEventOutputStream stream;
+
+        ReleaseListener(GzipEventOutputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(stream);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(stream);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(stream);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -2,6 +2,11 @@ package cn.zuster.sse.service;
 
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * SSE 相关业务接口
  *
@@ -14,9 +19,25 @@ public interface SseService {
      *
      * @param clientId 客户端ID
      * @param autoCloseAfterData 数据发送后是否自动关闭连接
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
      * @return
      */
-    SseEmitter start(String clientId, Boolean autoCloseAfterData);
+    SseEmitter start(String clientId, Boolean autoCloseAfterData, Boolean delta, Boolean ack);
+
+    /**
+     * 新建非阻塞连接
+     *
+     * @param clientId 客户端ID
+     * @param autoCloseAfterData 数据发送后是否自动关闭连接
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
+     * @param request 请求
+     * @param response 响应
+     * @throws IOException
+     */
+    void startNio(String clientId, Boolean autoCloseAfterData, Boolean delta, Boolean ack,
+                  HttpServletRequest request, HttpServletResponse response) throws IOException;
 
     /**
      * 发送数据
@@ -33,4 +54,73 @@ public interface SseService {
      * @return
      */
     String close(String clientId);
+
+    /**
+     * 新建多路复用连接
+     *
+     * @param connectionId 物理连接ID
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
+     * @return
+     */
+    SseEmitter startMux(String connectionId, Boolean delta, Boolean ack);
+
+    /**
+     * 在多路复用连接上订阅逻辑流
+     *
+     * @param connectionId 物理连接ID
+     * @param clientId 客户端ID（逻辑流ID）
+     * @return
+     */
+    String subscribe(String connectionId, String clientId);
+
+    /**
+     * 在多路复用连接上退订逻辑流
+     *
+     * @param connectionId 物理连接ID
+     * @param clientId 客户端ID（逻辑流ID）
+     * @return
+     */
+    String unsubscribe(String connectionId, String clientId);
+
+    /**
+     * 关闭多路复用连接
+     *
+     * @param connectionId 物理连接ID
+     * @return
+     */
+    String closeMux(String connectionId);
+
+    /**
+     * 向内存事件源发布一条事件，由桥接推送给客户端
+     *
+     * @param clientId 客户端ID
+     * @param topic 主题
+     * @param data 数据
+     * @return
+     */
+    String publish(String clientId, String topic, String data);
+
+    /**
+     * 事件桥接统计
+     *
+     * @return
+     */
+    Map<String, Object> bridgeStats();
+
+    /**
+     * 确认收到结果
+     *
+     * @param clientId 客户端ID
+     * @param eventId 事件ID
+     * @return
+     */
+    String ack(String clientId, String eventId);
+
+    /**
+     * 结果投递统计
+     *
+     * @return
+     */
+    Map<String, Object> deliveryStats();
 }
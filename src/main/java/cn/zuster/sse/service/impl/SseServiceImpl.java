@@ -1,20 +1,33 @@
 package cn.zuster.sse.service.impl;
 
+import cn.zuster.sse.bridge.EventSource;
+import cn.zuster.sse.bridge.InMemoryEventSource;
+import cn.zuster.sse.bridge.SseEventBridge;
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.delivery.SseDelivery;
 import cn.zuster.sse.exception.SseException;
 import cn.zuster.sse.service.SseService;
 import cn.zuster.sse.session.SseSession;
 import cn.zuster.sse.task.AsyncDataTask;
 import cn.zuster.sse.task.HeartBeatTask;
+import cn.zuster.sse.util.NioSseEmitter;
 import cn.zuster.sse.util.SseEmitterUTF8;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,45 +42,89 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SseServiceImpl implements SseService {
     private static final Logger logger = LoggerFactory.getLogger(SseServiceImpl.class);
     
+    // 增量推送时send接口数据使用的key
+    private static final String SEND_KEY = "send";
+    
+    // 多路复用连接的心跳key前缀，避免与clientId冲突
+    private static final String MUX_HEARTBEAT_PREFIX = "mux:";
+    
     // 存储客户端连接是否需要自动关闭的标志
     private final Map<String, Boolean> autoCloseFlags = new ConcurrentHashMap<>();
     
-    // 心跳任务线程池
-    private final ScheduledExecutorService heartbeatExecutor = Executors.newScheduledThreadPool(1);
+    // 心跳任务线程池，线程数随配置调整
+    private final ScheduledThreadPoolExecutor heartbeatExecutor = new ScheduledThreadPoolExecutor(1);
+    
+    // 每个连接的心跳：clientId（多路复用连接为 mux:connectionId） -> 心跳
+    private final Map<String, Heartbeat> heartbeats = new ConcurrentHashMap<>();
+    
+    // 当前生效的心跳间隔（毫秒）
+    private volatile long heartbeatIntervalMs;
+    
+    @Autowired
+    private SseProperties properties;
+    
+    @Autowired
+    private SseEventBridge eventBridge;
+    
+    @PostConstruct
+    public void init() {
+        heartbeatExecutor.setRemoveOnCancelPolicy(true);
+        applyHeartbeatTuning();
+    }
 
     /**
      * 新建连接
      *
      * @param clientId 客户端ID
      * @param autoCloseAfterData 数据发送后是否自动关闭连接
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
      * @return
      */
     @Override
-    public SseEmitter start(String clientId, Boolean autoCloseAfterData) {
+    public SseEmitter start(String clientId, Boolean autoCloseAfterData, Boolean delta, Boolean ack) {
         // 默认30秒超时,设置为0L则永不超时
         // 设置为0表示永不超时，因为我们的异步任务需要1分钟
         // 使用UTF-8编码的SseEmitter解决中文乱码问题
-        SseEmitter emitter = new SseEmitterUTF8(0L);
-        logger.info("MSG: SseConnect | EmitterHash: {} | ID: {} | AutoClose: {} | Date: {}", 
-                emitter.hashCode(), clientId, autoCloseAfterData, new Date());
+        return start(new SseEmitterUTF8(0L), clientId, autoCloseAfterData, delta, ack);
+    }
+
+    /**
+     * 新建非阻塞连接，写出在事件循环中进行，其余行为与start相同
+     *
+     * @param clientId 客户端ID
+     * @param autoCloseAfterData 数据发送后是否自动关闭连接
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
+     * @param request 请求
+     * @param response 响应
+     * @throws IOException
+     */
+    @Override
+    public void startNio(String clientId, Boolean autoCloseAfterData, Boolean delta, Boolean ack,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        start(NioSseEmitter.open(request, response), clientId, autoCloseAfterData, delta, ack);
+    }
+
+    private SseEmitter start(SseEmitter emitter, String clientId, Boolean autoCloseAfterData, Boolean delta, Boolean ack) {
+        logger.info("MSG: SseConnect | EmitterHash: {} | ID: {} | AutoClose: {} | Delta: {} | Ack: {} | Date: {}", 
+                emitter.hashCode(), clientId, autoCloseAfterData, delta, ack, new Date());
         
         // 保存自动关闭标志
         autoCloseFlags.put(clientId, autoCloseAfterData);
         
         // 添加到会话管理
-        SseSession.add(clientId, emitter);
+        SseSession.add(clientId, emitter, Boolean.TRUE.equals(delta), Boolean.TRUE.equals(ack));
         
-        try {
-            // 发送连接成功消息
-            emitter.send(SseEmitter.event()
-                    .name("connect")
-                    .data("连接已建立")
-                    .id(String.valueOf(System.currentTimeMillis())));
-        } catch (IOException e) {
-            logger.error("MSG: Error sending initial message | ID: {} | Error: {}", clientId, e.getMessage());
-        }
+        // 发送连接成功消息，走控制通道
+        SseSession.sendControl(clientId, SseEmitter.event()
+                .name("connect")
+                .data("连接已建立")
+                .id(String.valueOf(System.currentTimeMillis())));
+        
+        Heartbeat heartbeat = null;
         
-        // 检查是否有缓存的任务结果，有则立即发送
+        // 检查是否有未送达的任务结果，有则立即重发（开启ACK时只重发未确认的）
         boolean hasCachedResult = AsyncDataTask.hasTaskResult(clientId);
         if (hasCachedResult) {
             logger.info("MSG: Found cached result on reconnect | ID: {} | Date: {}", clientId, new Date());
@@ -75,18 +132,15 @@ public class SseServiceImpl implements SseService {
             
             // 如果设置了自动关闭，发送完缓存数据后关闭连接
             if (autoCloseAfterData) {
-                try {
-                    emitter.send(SseEmitter.event()
-                            .name("message")
-                            .data("end")
-                            .id(String.valueOf(System.currentTimeMillis())));
-                    close(clientId);
-                } catch (IOException e) {
-                    logger.error("MSG: Error sending end message | ID: {} | Error: {}", clientId, e.getMessage());
-                }
+                // end标记排在数据通道内，保证在结果数据之后到达，close会等队列写完再complete
+                SseSession.send(clientId, SseEmitter.event()
+                        .name("message")
+                        .data("end")
+                        .id(String.valueOf(System.currentTimeMillis())));
+                close(clientId);
             } else {
                 // 启动心跳任务
-                startHeartbeat(clientId);
+                heartbeat = startHeartbeat(clientId);
             }
         }
         
@@ -94,46 +148,106 @@ public class SseServiceImpl implements SseService {
         boolean taskStarted = AsyncDataTask.hasRunningTask(clientId);
         if (taskStarted) {
             logger.info("MSG: AsyncTask already running for client | ID: {} | Date: {}", clientId, new Date());
+            // 旧连接的心跳随旧emitter结束，重连后需要为新连接启动心跳
+            if (!autoCloseAfterData) {
+                heartbeat = startHeartbeat(clientId);
+            }
         } else if (!hasCachedResult) { // 只有在没有缓存结果且没有运行任务的情况下才启动新任务
             // 启动异步任务
             AsyncDataTask.startAsyncTask(clientId);
             
             // 如果不需要自动关闭，启动心跳任务
             if (!autoCloseAfterData) {
-                startHeartbeat(clientId);
+                heartbeat = startHeartbeat(clientId);
             }
         }
         
+        // 回调只停止本连接的心跳，重连后旧emitter的回调不会影响新连接
+        final Heartbeat connectionHeartbeat = heartbeat;
+        
         emitter.onCompletion(() -> {
             logger.info("MSG: SseConnectCompletion | EmitterHash: {} | ID: {} | Date: {}", emitter.hashCode(), clientId, new Date());
-            SseSession.onCompletion(clientId, null);
+            SseSession.onCompletion(clientId, stopHeartbeat(clientId, connectionHeartbeat));
             autoCloseFlags.remove(clientId);
         });
         emitter.onTimeout(() -> {
             logger.error("MSG: SseConnectTimeout | EmitterHash: {} | ID: {} | Date: {}", emitter.hashCode(), clientId, new Date());
             SseSession.onError(clientId, new SseException("TimeOut(clientId: " + clientId + ")"));
+            cancel(stopHeartbeat(clientId, connectionHeartbeat));
             autoCloseFlags.remove(clientId);
         });
         emitter.onError(t -> {
             logger.error("MSG: SseConnectError | EmitterHash: {} | ID: {} | Date: {}", emitter.hashCode(), clientId, new Date());
             SseSession.onError(clientId, new SseException("Error(clientId: " + clientId + ")"));
+            cancel(stopHeartbeat(clientId, connectionHeartbeat));
             autoCloseFlags.remove(clientId);
         });
         return emitter;
     }
 
     /**
-     * 启动心跳任务，每5秒发送一次心跳
+     * 启动心跳任务，按sse.heartbeat.interval（默认5秒）发送心跳
      * 
      * @param clientId 客户端ID
+     * @return 本连接的心跳
      */
-    private void startHeartbeat(String clientId) {
-        heartbeatExecutor.scheduleAtFixedRate(
-            new HeartBeatTask(clientId), 
-            5, 
-            5, 
-            TimeUnit.SECONDS
-        );
+    private Heartbeat startHeartbeat(String clientId) {
+        return startHeartbeat(clientId, new HeartBeatTask(clientId));
+    }
+
+    private Heartbeat startHeartbeat(String key, HeartBeatTask task) {
+        Heartbeat heartbeat = new Heartbeat(task);
+        heartbeat.schedule(heartbeatExecutor, heartbeatIntervalMs, heartbeatIntervalMs);
+        cancel(stopHeartbeat(key, heartbeats.put(key, heartbeat)));
+        return heartbeat;
+    }
+
+    /**
+     * 停止心跳，只移除仍属于该连接的记录
+     *
+     * @param clientId  客户端ID
+     * @param heartbeat 连接的心跳，可以为null
+     * @return 需要取消的定时任务，可以为null
+     */
+    private ScheduledFuture<?> stopHeartbeat(String clientId, Heartbeat heartbeat) {
+        if (heartbeat == null) {
+            return null;
+        }
+        heartbeats.remove(clientId, heartbeat);
+        return heartbeat.stop();
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 配置刷新后调整心跳线程数，间隔变化时重新排期已有连接的心跳，连接本身不受影响
+     */
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void onTuningRefreshed() {
+        long oldIntervalMs = heartbeatIntervalMs;
+        applyHeartbeatTuning();
+        if (oldIntervalMs == heartbeatIntervalMs) {
+            return;
+        }
+        // 首次心跳在新间隔内随机分散，避免所有连接同时发送
+        for (Heartbeat heartbeat : heartbeats.values()) {
+            long initialDelayMs = 1 + ThreadLocalRandom.current().nextLong(heartbeatIntervalMs);
+            heartbeat.schedule(heartbeatExecutor, initialDelayMs, heartbeatIntervalMs);
+        }
+        logger.info("MSG: Heartbeat rescheduled | Interval: {}ms | Connections: {} | Date: {}",
+                heartbeatIntervalMs, heartbeats.size(), new Date());
+    }
+
+    private void applyHeartbeatTuning() {
+        SseProperties.Heartbeat tuning = properties.getHeartbeat();
+        if (tuning.getPoolSize() > 0) {
+            heartbeatExecutor.setCorePoolSize(tuning.getPoolSize());
+        }
+        heartbeatIntervalMs = tuning.getInterval().toMillis();
     }
 
     /**
@@ -146,7 +260,7 @@ public class SseServiceImpl implements SseService {
     public String send(String clientId) {
         Boolean autoClose = autoCloseFlags.getOrDefault(clientId, false);
         
-        if (SseSession.send(clientId, System.currentTimeMillis())) {
+        if (SseSession.send(clientId, SEND_KEY, System.currentTimeMillis())) {
             // 如果设置了自动关闭，发送完数据后发送结束标记并关闭连接
             if (autoClose) {
                 try {
@@ -171,7 +285,183 @@ public class SseServiceImpl implements SseService {
     public String close(String clientId) {
         logger.info("MSG: SseConnectClose | ID: {} | Date: {}", clientId, new Date());
         autoCloseFlags.remove(clientId);
+        cancel(stopHeartbeat(clientId, heartbeats.get(clientId)));
         if (SseSession.del(clientId)) return "Succeed!";
         return "Error!";
     }
+
+    /**
+     * 新建多路复用连接，逻辑流通过subscribe/unsubscribe增减，整个连接只有一个心跳
+     *
+     * @param connectionId 物理连接ID
+     * @param delta 是否使用增量推送
+     * @param ack 结果是否需要客户端确认
+     * @return
+     */
+    @Override
+    public SseEmitter startMux(String connectionId, Boolean delta, Boolean ack) {
+        SseEmitter emitter = new SseEmitterUTF8(0L);
+        logger.info("MSG: SseMuxConnect | EmitterHash: {} | ConnectionId: {} | Delta: {} | Ack: {} | Date: {}",
+                emitter.hashCode(), connectionId, delta, ack, new Date());
+
+        SseSession.addMux(connectionId, emitter, Boolean.TRUE.equals(delta), Boolean.TRUE.equals(ack));
+        SseSession.sendMuxControl(connectionId, SseEmitter.event()
+                .name("connect")
+                .data("连接已建立")
+                .id(String.valueOf(System.currentTimeMillis())));
+
+        final String heartbeatKey = MUX_HEARTBEAT_PREFIX + connectionId;
+        final Heartbeat heartbeat = startHeartbeat(heartbeatKey, new HeartBeatTask(connectionId, true));
+
+        emitter.onCompletion(() -> {
+            logger.info("MSG: SseMuxCompletion | EmitterHash: {} | ConnectionId: {} | Date: {}", emitter.hashCode(), connectionId, new Date());
+            SseSession.onMuxCompletion(connectionId, emitter);
+            cancel(stopHeartbeat(heartbeatKey, heartbeat));
+        });
+        emitter.onTimeout(() -> {
+            logger.error("MSG: SseMuxTimeout | EmitterHash: {} | ConnectionId: {} | Date: {}", emitter.hashCode(), connectionId, new Date());
+            SseSession.onMuxError(connectionId, emitter, new SseException("TimeOut(connectionId: " + connectionId + ")"));
+            cancel(stopHeartbeat(heartbeatKey, heartbeat));
+        });
+        emitter.onError(t -> {
+            logger.error("MSG: SseMuxError | EmitterHash: {} | ConnectionId: {} | Date: {}", emitter.hashCode(), connectionId, new Date());
+            SseSession.onMuxError(connectionId, emitter, new SseException("Error(connectionId: " + connectionId + ")"));
+            cancel(stopHeartbeat(heartbeatKey, heartbeat));
+        });
+        return emitter;
+    }
+
+    /**
+     * 在多路复用连接上订阅逻辑流，与start相同：有未送达结果则重发，否则启动任务
+     *
+     * @param connectionId 物理连接ID
+     * @param clientId 客户端ID（逻辑流ID）
+     * @return
+     */
+    @Override
+    public String subscribe(String connectionId, String clientId) {
+        if (!SseSession.subscribe(connectionId, clientId)) {
+            return "Error!";
+        }
+        // 逻辑流不单独发心跳；原来的独立连接（如有）的心跳随旧emitter结束
+        autoCloseFlags.remove(clientId);
+        cancel(stopHeartbeat(clientId, heartbeats.get(clientId)));
+
+        if (!AsyncDataTask.sendCachedResultIfExists(clientId) && !AsyncDataTask.hasRunningTask(clientId)) {
+            AsyncDataTask.startAsyncTask(clientId);
+        }
+        return "Succeed!";
+    }
+
+    /**
+     * 在多路复用连接上退订逻辑流，物理连接保持
+     *
+     * @param connectionId 物理连接ID
+     * @param clientId 客户端ID（逻辑流ID）
+     * @return
+     */
+    @Override
+    public String unsubscribe(String connectionId, String clientId) {
+        if (SseSession.unsubscribe(connectionId, clientId)) return "Succeed!";
+        return "Error!";
+    }
+
+    /**
+     * 关闭多路复用连接，其上的逻辑流全部退订，未确认的结果在重新订阅时重发
+     *
+     * @param connectionId 物理连接ID
+     * @return
+     */
+    @Override
+    public String closeMux(String connectionId) {
+        logger.info("MSG: SseMuxClose | ConnectionId: {} | Date: {}", connectionId, new Date());
+        final String heartbeatKey = MUX_HEARTBEAT_PREFIX + connectionId;
+        cancel(stopHeartbeat(heartbeatKey, heartbeats.get(heartbeatKey)));
+        if (SseSession.delMux(connectionId)) return "Succeed!";
+        return "Error!";
+    }
+
+    /**
+     * 向内存事件源发布一条事件，由桥接推送给客户端
+     *
+     * @param clientId 客户端ID
+     * @param topic 主题
+     * @param data 数据
+     * @return
+     */
+    @Override
+    public String publish(String clientId, String topic, String data) {
+        EventSource source = eventBridge.getSource();
+        if (!(source instanceof InMemoryEventSource)) {
+            logger.warn("MSG: Publish only supported by in-memory source | ID: {} | Source: {}", clientId, source.getClass().getSimpleName());
+            return "Error!";
+        }
+        long offset = ((InMemoryEventSource) source).publish(clientId, topic, data);
+        if (offset < 0) return "Error!";
+        return "Succeed!";
+    }
+
+    /**
+     * 事件桥接统计
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Object> bridgeStats() {
+        return eventBridge.stats();
+    }
+
+    /**
+     * 确认收到结果
+     *
+     * @param clientId 客户端ID
+     * @param eventId 事件ID
+     * @return
+     */
+    @Override
+    public String ack(String clientId, String eventId) {
+        if (SseDelivery.ack(clientId, eventId)) return "Succeed!";
+        return "Error!";
+    }
+
+    /**
+     * 结果投递统计
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Object> deliveryStats() {
+        return SseDelivery.stats();
+    }
+
+    /**
+     * 单个连接的心跳，间隔变化时替换定时任务
+     */
+    private static class Heartbeat {
+        private final HeartBeatTask task;
+        private ScheduledFuture<?> future;
+        private boolean stopped = false;
+
+        Heartbeat(HeartBeatTask task) {
+            this.task = task;
+        }
+
+        synchronized void schedule(ScheduledThreadPoolExecutor executor, long initialDelayMs, long intervalMs) {
+            if (stopped) {
+                return;
+            }
+            cancel(future);
+            future = executor.scheduleAtFixedRate(
+                task, 
+                initialDelayMs, 
+                intervalMs, 
+                TimeUnit.MILLISECONDS
+            );
+        }
+
+        synchronized ScheduledFuture<?> stop() {
+            stopped = true;
+            return future;
+        }
+    }
 }
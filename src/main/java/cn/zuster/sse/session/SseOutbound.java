@@ -0,0 +1,428 @@
+package cn.zuster.sse.session;
+
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.util.NioSseEmitter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个SSE连接的出站调度
+ *
+ * 控制帧（connect、心跳）走高优先级通道，业务数据走数据通道。
+ * 超过chunk大小的数据会被拆成多个chunk事件，每写完一帧都会优先检查控制通道，
+ * 因此控制帧的等待时间最多是一个chunk的写出时间，与数据本身的大小无关。
+ * 每写完一个数据帧就把写线程让给其他连接，写线程池不会被少数大数据连接占满。
+ */
+public class SseOutbound {
+    private static final Logger logger = LoggerFactory.getLogger(SseOutbound.class);
+
+    /**
+     * 拆分后的数据块事件名，客户端按id（seq:index/total）重组
+     */
+    public static final String CHUNK_EVENT = "chunk";
+
+    /**
+     * 开启ACK的连接上，带事件ID的结果使用的事件名；浏览器会沿用上一个事件的lastEventId，
+     * 客户端只对这两类事件确认和去重
+     */
+    public static final String RESULT_EVENT = "result";
+
+    /**
+     * 开启ACK的连接上，拆分后的结果数据块事件名，格式与chunk相同
+     */
+    public static final String RESULT_CHUNK_EVENT = "result-chunk";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * 所有连接共享的写线程池，每个连接同一时刻最多占用一个线程
+     */
+    private static final ThreadPoolExecutor WRITER;
+
+    static {
+        int threads = SseProperties.current().getWriter().getThreads();
+        WRITER = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new WriterThreadFactory());
+    }
+
+    /**
+     * 连接序号，增量快照按连接区分
+     */
+    private static final AtomicLong SERIAL = new AtomicLong();
+
+    private final String id;
+    private final SseEmitter emitter;
+    private final long serial = SERIAL.incrementAndGet();
+
+    /**
+     * 高优先级通道：控制帧、心跳
+     */
+    private final Queue<Frame> controlLane = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 普通通道：业务数据（含拆分后的chunk）
+     */
+    private final Queue<Frame> dataLane = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private final AtomicLong chunkSeq = new AtomicLong();
+    private volatile boolean closing = false;
+
+    /**
+     * 是否使用增量推送
+     */
+    private final boolean delta;
+
+    /**
+     * 结果是否需要客户端确认
+     */
+    private final boolean ack;
+
+    /**
+     * 是否为多路复用连接，数据会包装成 {"stream": 逻辑流ID, "data": 数据}
+     */
+    private final boolean multiplexed;
+
+    /**
+     * 多路复用连接上订阅的逻辑流
+     */
+    private final Set<String> streams = ConcurrentHashMap.newKeySet();
+
+    SseOutbound(String id, SseEmitter emitter, boolean delta, boolean ack) {
+        this(id, emitter, delta, ack, false);
+    }
+
+    SseOutbound(String id, SseEmitter emitter, boolean delta, boolean ack, boolean multiplexed) {
+        this.id = id;
+        this.emitter = emitter;
+        this.delta = delta;
+        this.ack = ack;
+        this.multiplexed = multiplexed;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public boolean isAck() {
+        return ack;
+    }
+
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    public Set<String> getStreams() {
+        return streams;
+    }
+
+    /**
+     * 增量快照的作用域：逻辑流ID + 连接序号
+     * 新连接的作用域与旧连接不同，不会基于旧连接发送的快照计算patch
+     *
+     * @param stream 逻辑流ID（普通连接为客户端ID）
+     * @return 作用域
+     */
+    public String deltaScope(String stream) {
+        return stream + '#' + serial;
+    }
+
+    /**
+     * 多路复用连接上的数据加上逻辑流标记
+     *
+     * @param stream 逻辑流ID
+     * @param msg    数据
+     * @return 带标记的数据
+     */
+    static ObjectNode tag(String stream, Object msg) {
+        ObjectNode tagged = MAPPER.createObjectNode();
+        tagged.put("stream", stream);
+        tagged.set("data", MAPPER.valueToTree(msg));
+        return tagged;
+    }
+
+    /**
+     * 控制帧入队
+     *
+     * @param event 事件
+     * @return 连接已关闭返回false
+     */
+    public boolean enqueueControl(SseEmitter.SseEventBuilder event) {
+        if (closing) {
+            return false;
+        }
+        offer(controlLane, new Frame(event, null));
+        schedule();
+        return true;
+    }
+
+    /**
+     * 数据入队，超过chunk大小的数据会被拆分
+     *
+     * @param msg 数据，可以是已构造好的事件
+     * @return 连接已关闭或序列化失败返回false
+     */
+    public boolean enqueueData(Object msg) {
+        return enqueueData(msg, null, null);
+    }
+
+    /**
+     * 数据入队，超过chunk大小的数据会被拆分
+     *
+     * @param msg      数据，可以是已构造好的事件
+     * @param eventId  事件ID，可以为null；拆分时作为chunk的序号，连接开启ACK时按结果事件发送
+     * @param callback 整条数据写出成功或失败后回调，可以为null；返回false时不会回调
+     * @return 连接已关闭或序列化失败返回false
+     */
+    public boolean enqueueData(Object msg, String eventId, WriteCallback callback) {
+        if (closing) {
+            return false;
+        }
+        if (msg instanceof SseEmitter.SseEventBuilder) {
+            offer(dataLane, new Frame((SseEmitter.SseEventBuilder) msg, callback));
+            schedule();
+            return true;
+        }
+
+        String payload;
+        MediaType mediaType;
+        if (msg instanceof CharSequence) {
+            payload = msg.toString();
+            mediaType = MediaType.TEXT_PLAIN;
+        } else {
+            try {
+                payload = MAPPER.writeValueAsString(msg);
+            } catch (JsonProcessingException e) {
+                logger.error("MSG: Serialize message error | ID: {} | Error: {}", id, e.getMessage());
+                return false;
+            }
+            mediaType = MediaType.APPLICATION_JSON;
+        }
+
+        boolean result = ack && eventId != null;
+        int chunkSize = SseProperties.current().getWriter().getChunkSize();
+        if (payload.length() <= chunkSize) {
+            SseEmitter.SseEventBuilder event = SseEmitter.event();
+            if (eventId != null) {
+                event.id(eventId);
+            }
+            if (result) {
+                event.name(RESULT_EVENT);
+            }
+            offer(dataLane, new Frame(event.data(payload, mediaType), callback));
+        } else {
+            List<String> parts = new ArrayList<>();
+            int start = 0;
+            while (start < payload.length()) {
+                int end = Math.min(start + chunkSize, payload.length());
+                // 不在代理对中间切断
+                if (end < payload.length() && Character.isHighSurrogate(payload.charAt(end - 1))) {
+                    end--;
+                }
+                parts.add(payload.substring(start, end));
+                start = end;
+            }
+            String seq = eventId != null ? eventId : String.valueOf(chunkSeq.incrementAndGet());
+            for (int index = 0; index < parts.size(); index++) {
+                // 回调挂在最后一块上，前面任一块失败都会连带最后一块失败
+                boolean last = index == parts.size() - 1;
+                offer(dataLane, new Frame(SseEmitter.event()
+                        .name(result ? RESULT_CHUNK_EVENT : CHUNK_EVENT)
+                        .id(seq + ":" + index + "/" + parts.size())
+                        .data(parts.get(index), MediaType.TEXT_PLAIN), last ? callback : null));
+            }
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * 写完已入队的数据后关闭emitter
+     */
+    public void close() {
+        closing = true;
+        schedule();
+    }
+
+    /**
+     * 丢弃未发送的数据，不再写出，未写出数据的回调按失败处理
+     */
+    public void discard() {
+        closing = true;
+        completed.set(true);
+        failAll(controlLane);
+        failAll(dataLane);
+    }
+
+    /**
+     * 调整写线程数，已排队的写任务不受影响
+     *
+     * @param threads 线程数
+     */
+    public static synchronized void resizeWriters(int threads) {
+        if (threads <= 0 || threads == WRITER.getCorePoolSize()) {
+            return;
+        }
+        // 先调整的一方不能让core大于max
+        if (threads > WRITER.getMaximumPoolSize()) {
+            WRITER.setMaximumPoolSize(threads);
+            WRITER.setCorePoolSize(threads);
+        } else {
+            WRITER.setCorePoolSize(threads);
+            WRITER.setMaximumPoolSize(threads);
+        }
+        logger.info("MSG: SSE writer pool resized | Threads: {} | Date: {}", threads, new Date());
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            WRITER.execute(this::drain);
+        }
+    }
+
+    /**
+     * 每轮写出全部控制帧和最多一个数据帧（不超过一个chunk），还有数据时重新提交到写线程池排队，
+     * 各连接轮流占用写线程，大数据或慢客户端不会长时间占住线程而拖慢其他连接的心跳
+     */
+    private void drain() {
+        boolean failed = false;
+        boolean more = false;
+        Frame frame = null;
+        try {
+            while (!completed.get() && (frame = controlLane.poll()) != null) {
+                write(frame);
+                frame = null;
+            }
+            if (!completed.get() && (frame = dataLane.poll()) != null) {
+                write(frame);
+                frame = null;
+            }
+            if (!completed.get() && (!controlLane.isEmpty() || !dataLane.isEmpty())) {
+                more = true;
+            } else if (closing && completed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            failed = true;
+            if (frame != null && frame.callback != null) {
+                frame.callback.onFailed();
+            }
+            logger.error("MSG: SendMessageError | ID: {} | EmitterHash: {} | Date: {} | Error: {}",
+                    id, emitter.hashCode(), new Date(), e.getMessage());
+            discard();
+            // 如果发送出错，可能连接已断开，从SESSION中删除
+            SseSession.remove(id, this);
+        } finally {
+            if (!more) {
+                draining.set(false);
+            }
+        }
+        if (more) {
+            // 保持draining标记，排到其他连接之后继续
+            WRITER.execute(this::drain);
+            return;
+        }
+        // 释放标记后有新帧入队的情况
+        if (!failed && !completed.get() && (closing || !controlLane.isEmpty() || !dataLane.isEmpty())) {
+            schedule();
+        }
+    }
+
+    private void write(Frame frame) throws IOException {
+        if (frame.callback != null && emitter instanceof NioSseEmitter) {
+            // 非阻塞连接的send只是放入缓冲区，由事件循环写到连接后再回调
+            final WriteCallback callback = frame.callback;
+            ((NioSseEmitter) emitter).send(frame.event, () -> callback.onWritten(ack), callback::onFailed);
+            return;
+        }
+        emitter.send(frame.event);
+        if (frame.callback != null) {
+            frame.callback.onWritten(ack);
+        }
+    }
+
+    private void offer(Queue<Frame> lane, Frame frame) {
+        lane.offer(frame);
+        // 入队与discard并发时，保证回调不会丢失
+        if (completed.get()) {
+            failAll(lane);
+        }
+    }
+
+    private static void failAll(Queue<Frame> lane) {
+        Frame frame;
+        while ((frame = lane.poll()) != null) {
+            if (frame.callback != null) {
+                frame.callback.onFailed();
+            }
+        }
+    }
+
+    /**
+     * 写出结果回调，在写线程（非阻塞连接为事件循环线程）中执行，实现需要尽快返回
+     */
+    public interface WriteCallback {
+        /**
+         * 已写入连接
+         *
+         * @param ack 写出该帧的连接（即入队时的连接）是否需要客户端确认
+         */
+        void onWritten(boolean ack);
+
+        /**
+         * 连接断开，未写出
+         */
+        void onFailed();
+    }
+
+    private static class Frame {
+        private final SseEmitter.SseEventBuilder event;
+        private final WriteCallback callback;
+
+        Frame(SseEmitter.SseEventBuilder event, WriteCallback callback) {
+            this.event = event;
+            this.callback = callback;
+        }
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "sse-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
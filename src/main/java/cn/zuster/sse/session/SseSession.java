@@ -1,11 +1,11 @@
 package cn.zuster.sse.session;
 
+import cn.zuster.sse.delta.SseDelta;
 import cn.zuster.sse.exception.SseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,6 +30,17 @@ public class SseSession {
      */
     private static Map<Integer, String> EMITTER_IDS = new ConcurrentHashMap<>();
 
+    /**
+     * 每个连接的出站调度（控制通道优先于数据通道）
+     */
+    private static Map<String, SseOutbound> OUTBOUND = new ConcurrentHashMap<>();
+
+    /**
+     * 多路复用的物理连接：connectionId -> 出站调度
+     * 订阅在其上的逻辑流同时登记在SESSION和OUTBOUND中，发送时与普通连接没有区别
+     */
+    private static Map<String, SseOutbound> MUX = new ConcurrentHashMap<>();
+
     /**
      * 判断Session是否存在
      *
@@ -47,6 +58,18 @@ public class SseSession {
      * @param emitter SseEmitter
      */
     public static void add(String id, SseEmitter emitter) {
+        add(id, emitter, false, false);
+    }
+
+    /**
+     * 增加Session
+     *
+     * @param id      客户端ID
+     * @param emitter SseEmitter
+     * @param delta   是否使用增量推送
+     * @param ack     结果是否需要客户端确认
+     */
+    public static void add(String id, SseEmitter emitter, boolean delta, boolean ack) {
         logger.info("MSG: Adding SSE Session | ID: {} | EmitterHash: {} | Date: {}", id, emitter.hashCode(), new Date());
         final SseEmitter oldEmitter = SESSION.get(id);
         
@@ -56,16 +79,23 @@ public class SseSession {
             // 先从EMITTER_IDS中移除旧emitter的记录，防止其onCompletion移除新emitter
             EMITTER_IDS.remove(oldEmitter.hashCode());
             
-            try {
-                // 安全关闭旧的emitter
-                oldEmitter.complete();
-            } catch (Exception e) {
-                logger.warn("MSG: Error completing old emitter | ID: {} | Error: {}", id, e.getMessage());
+            // 安全关闭旧的emitter，已入队的数据写完后再complete；旧的是多路复用连接时只退订
+            final SseOutbound oldOutbound = OUTBOUND.remove(id);
+            if (oldOutbound != null) {
+                release(id, oldOutbound);
+            } else {
+                try {
+                    oldEmitter.complete();
+                } catch (Exception e) {
+                    logger.warn("MSG: Error completing old emitter | ID: {} | Error: {}", id, e.getMessage());
+                }
             }
         }
         
         // 确保新的emitter被放入映射
         SESSION.put(id, emitter);
+        // 快照按连接区分，新连接不会看到旧连接的快照，第一次增量推送必然是关键帧
+        OUTBOUND.put(id, new SseOutbound(id, emitter, delta, ack));
         
         // 记录emitter和clientId的对应关系
         EMITTER_IDS.put(emitter.hashCode(), id);
@@ -83,12 +113,27 @@ public class SseSession {
      */
     public static boolean del(String id) {
         final SseEmitter emitter = SESSION.remove(id);
+        final SseOutbound outbound = OUTBOUND.remove(id);
+        if (outbound != null) {
+            SseDelta.reset(outbound.deltaScope(id));
+        }
+        if (outbound != null && outbound.isMultiplexed()) {
+            // 逻辑流只退订，不关闭物理连接
+            release(id, outbound);
+            logger.info("MSG: SSE stream unsubscribed | ID: {} | ConnectionId: {}", id, outbound.getId());
+            return true;
+        }
         if (emitter != null) {
             try {
                 // 从EMITTER_IDS中移除
                 EMITTER_IDS.remove(emitter.hashCode());
                 
-                emitter.complete();
+                // 先写完已入队的数据（如end标记），再complete
+                if (outbound != null) {
+                    outbound.close();
+                } else {
+                    emitter.complete();
+                }
                 logger.info("MSG: SSE Session removed | ID: {} | EmitterHash: {} | CurrentSessionSize: {}", 
                         id, emitter.hashCode(), SESSION.size());
                 return true;
@@ -100,32 +145,111 @@ public class SseSession {
     }
 
     /**
-     * 发送消息
+     * 发送消息，走数据通道
      *
      * @param id  客户端ID
      * @param msg 发送的消息
-     * @return
+     * @return 成功入队返回true
      */
     public static boolean send(String id, Object msg) {
-        final SseEmitter emitter = SESSION.get(id);
-        if (emitter != null) {
+        final SseOutbound outbound = OUTBOUND.get(id);
+        if (outbound != null) {
+            if (outbound.isMultiplexed()) {
+                try {
+                    return outbound.enqueueData(SseOutbound.tag(id, msg));
+                } catch (IllegalArgumentException e) {
+                    logger.error("MSG: Encode message error | ID: {} | Error: {}", id, e.getMessage());
+                    return false;
+                }
+            }
+            return outbound.enqueueData(msg);
+        } else {
+            logger.warn("MSG: Emitter not found for ID: {} when sending message", id);
+        }
+        return false;
+    }
+
+    /**
+     * 发送可增量更新的数据，走数据通道
+     *
+     * 连接开启了增量推送时按key发送关键帧或patch，否则与send(id, msg)相同
+     *
+     * @param id  客户端ID
+     * @param key 数据key，同一key的多次发送之间计算差异
+     * @param msg 完整数据
+     * @return 成功入队返回true
+     */
+    public static boolean send(String id, String key, Object msg) {
+        return send(id, key, msg, null, null);
+    }
+
+    /**
+     * 发送可增量更新的数据，走数据通道，并在写出后回调
+     *
+     * @param id       客户端ID
+     * @param key      数据key，同一key的多次发送之间计算差异
+     * @param msg      完整数据
+     * @param eventId  事件ID，可以为null
+     * @param callback 写出成功或失败后回调，可以为null；返回false时不会回调
+     * @return 成功入队返回true
+     */
+    public static boolean send(String id, String key, Object msg, String eventId, SseOutbound.WriteCallback callback) {
+        final SseOutbound outbound = OUTBOUND.get(id);
+        if (outbound == null) {
+            logger.warn("MSG: Emitter not found for ID: {} when sending message", id);
+            return false;
+        }
+        if (!outbound.isDelta() && !outbound.isMultiplexed()) {
+            return outbound.enqueueData(msg, eventId, callback);
+        }
+        // 编码和入队需要原子执行，保证patch的顺序与快照一致
+        synchronized (outbound) {
             try {
-                emitter.send(msg);
-                return true;
-            } catch (IOException e) {
-                logger.error("MSG: SendMessageError-IOException | ID: {} | EmitterHash: {} | Date: {} | Error: {}", 
-                        id, emitter.hashCode(), new Date(), e.getMessage());
-                // 如果发送出错，可能连接已断开，从SESSION中删除
-                SESSION.remove(id);
-                EMITTER_IDS.remove(emitter.hashCode());
+                Object data = outbound.isDelta() ? SseDelta.encode(outbound.deltaScope(id), key, msg) : msg;
+                return outbound.enqueueData(outbound.isMultiplexed() ? SseOutbound.tag(id, data) : data, eventId, callback);
+            } catch (IllegalArgumentException e) {
+                logger.error("MSG: Encode message error | ID: {} | Key: {} | Error: {}", id, key, e.getMessage());
                 return false;
             }
+        }
+    }
+
+    /**
+     * 发送控制帧（connect、心跳），走高优先级通道
+     *
+     * @param id    客户端ID
+     * @param event 控制事件
+     * @return 成功入队返回true
+     */
+    public static boolean sendControl(String id, SseEmitter.SseEventBuilder event) {
+        final SseOutbound outbound = OUTBOUND.get(id);
+        if (outbound != null) {
+            return outbound.enqueueControl(event);
         } else {
-            logger.warn("MSG: Emitter not found for ID: {} when sending message", id);
+            logger.warn("MSG: Emitter not found for ID: {} when sending control event", id);
         }
         return false;
     }
 
+    /**
+     * 写出失败时移除Session，只移除仍属于该outbound的记录，避免误删重连后的新emitter
+     *
+     * @param id       客户端ID
+     * @param outbound 写出失败的outbound
+     */
+    static void remove(String id, SseOutbound outbound) {
+        if (outbound.isMultiplexed()) {
+            MUX.remove(id, outbound);
+            detachStreams(outbound);
+            return;
+        }
+        if (OUTBOUND.remove(id, outbound)) {
+            SESSION.remove(id, outbound.getEmitter());
+        }
+        SseDelta.reset(outbound.deltaScope(id));
+        EMITTER_IDS.remove(outbound.getEmitter().hashCode());
+    }
+
     /**
      * SseEmitter onCompletion 后执行的逻辑
      * 
@@ -155,6 +279,11 @@ public class SseSession {
      * @param e
      */
     public static void onError(String id, SseException e) {
+        final SseOutbound current = OUTBOUND.get(id);
+        if (current != null && current.isMultiplexed()) {
+            // 逻辑流没有独立的emitter，物理连接的错误由onMuxError处理
+            return;
+        }
         final SseEmitter emitter = SESSION.get(id);
         if (emitter != null) {
             try {
@@ -163,6 +292,11 @@ public class SseSession {
                 // 从SESSION和EMITTER_IDS中移除
                 SESSION.remove(id);
                 EMITTER_IDS.remove(emitterHash);
+                final SseOutbound outbound = OUTBOUND.remove(id);
+                if (outbound != null) {
+                    outbound.discard();
+                    SseDelta.reset(outbound.deltaScope(id));
+                }
                 
                 emitter.completeWithError(e);
                 logger.info("MSG: SSE Session error | ID: {} | EmitterHash: {} | Error: {}", 
@@ -173,6 +307,180 @@ public class SseSession {
         }
     }
     
+    /**
+     * 增加多路复用的物理连接，同ID的旧连接上的逻辑流全部退订后关闭
+     *
+     * @param connectionId 物理连接ID
+     * @param emitter      SseEmitter
+     * @param delta        是否使用增量推送
+     * @param ack          结果是否需要客户端确认
+     */
+    public static void addMux(String connectionId, SseEmitter emitter, boolean delta, boolean ack) {
+        final SseOutbound old = MUX.put(connectionId, new SseOutbound(connectionId, emitter, delta, ack, true));
+        if (old != null) {
+            logger.info("MSG: Found existing mux connection | ConnectionId: {} | Will replace with new emitter", connectionId);
+            detachStreams(old);
+            old.close();
+        }
+        logger.info("MSG: SSE mux connection added | ConnectionId: {} | EmitterHash: {} | CurrentMuxSize: {}",
+                connectionId, emitter.hashCode(), MUX.size());
+    }
+
+    /**
+     * 在已有的多路复用连接上订阅逻辑流，逻辑流原来的连接会被替换
+     *
+     * @param connectionId 物理连接ID
+     * @param id           逻辑流ID（客户端ID）
+     * @return 物理连接不存在返回false
+     */
+    public static boolean subscribe(String connectionId, String id) {
+        final SseOutbound outbound = MUX.get(connectionId);
+        if (outbound == null) {
+            logger.warn("MSG: Mux connection not found | ConnectionId: {} | ID: {}", connectionId, id);
+            return false;
+        }
+        // 同一连接上重新订阅时作用域不变，先清除快照（与编码互斥），下一次增量推送强制为关键帧；
+        // subscribed在登记之前入队，该流的数据（重试、桥接等并发发送）不会先于它到达
+        final SseOutbound old;
+        synchronized (outbound) {
+            SseDelta.reset(outbound.deltaScope(id));
+            outbound.enqueueControl(SseEmitter.event().name("subscribed").data(id));
+            old = OUTBOUND.put(id, outbound);
+        }
+        if (old != null && old != outbound) {
+            release(id, old);
+        }
+        SESSION.put(id, outbound.getEmitter());
+        outbound.getStreams().add(id);
+        logger.info("MSG: SSE stream subscribed | ID: {} | ConnectionId: {} | Streams: {}",
+                id, connectionId, outbound.getStreams().size());
+        return true;
+    }
+
+    /**
+     * 在多路复用连接上退订逻辑流，物理连接保持
+     *
+     * @param connectionId 物理连接ID
+     * @param id           逻辑流ID（客户端ID）
+     * @return 该流未订阅在此连接上返回false
+     */
+    public static boolean unsubscribe(String connectionId, String id) {
+        final SseOutbound outbound = MUX.get(connectionId);
+        if (outbound == null || !OUTBOUND.remove(id, outbound)) {
+            return false;
+        }
+        release(id, outbound);
+        logger.info("MSG: SSE stream unsubscribed | ID: {} | ConnectionId: {} | Streams: {}",
+                id, connectionId, outbound.getStreams().size());
+        return true;
+    }
+
+    /**
+     * 关闭多路复用连接及其上的全部逻辑流
+     *
+     * @param connectionId 物理连接ID
+     * @return 连接不存在返回false
+     */
+    public static boolean delMux(String connectionId) {
+        final SseOutbound outbound = MUX.remove(connectionId);
+        if (outbound == null) {
+            return false;
+        }
+        detachStreams(outbound);
+        outbound.close();
+        logger.info("MSG: SSE mux connection removed | ConnectionId: {} | CurrentMuxSize: {}", connectionId, MUX.size());
+        return true;
+    }
+
+    /**
+     * 多路复用连接 onCompletion 后执行的逻辑，连接已被替换时忽略
+     *
+     * @param connectionId 物理连接ID
+     * @param emitter      完成的emitter
+     */
+    public static void onMuxCompletion(String connectionId, SseEmitter emitter) {
+        final SseOutbound outbound = MUX.get(connectionId);
+        if (outbound == null || outbound.getEmitter() != emitter || !MUX.remove(connectionId, outbound)) {
+            return;
+        }
+        detachStreams(outbound);
+        outbound.discard();
+        logger.info("MSG: SSE mux connection completed | ConnectionId: {} | CurrentMuxSize: {}", connectionId, MUX.size());
+    }
+
+    /**
+     * 多路复用连接 onTimeout 或 onError 后执行的逻辑
+     *
+     * @param connectionId 物理连接ID
+     * @param emitter      出错的emitter，连接已被替换时忽略
+     * @param e            异常
+     */
+    public static void onMuxError(String connectionId, SseEmitter emitter, SseException e) {
+        final SseOutbound outbound = MUX.get(connectionId);
+        if (outbound == null || outbound.getEmitter() != emitter || !MUX.remove(connectionId, outbound)) {
+            return;
+        }
+        detachStreams(outbound);
+        outbound.discard();
+        try {
+            emitter.completeWithError(e);
+        } catch (Exception ex) {
+            logger.warn("MSG: Error completing mux emitter with error | ConnectionId: {} | Error: {}", connectionId, ex.getMessage());
+        }
+        logger.info("MSG: SSE mux connection error | ConnectionId: {} | Error: {}", connectionId, e.getMessage());
+    }
+
+    /**
+     * 在多路复用连接上发送控制帧（心跳只按物理连接发送）
+     *
+     * @param connectionId 物理连接ID
+     * @param event        控制事件
+     * @return 成功入队返回true
+     */
+    public static boolean sendMuxControl(String connectionId, SseEmitter.SseEventBuilder event) {
+        final SseOutbound outbound = MUX.get(connectionId);
+        return outbound != null && outbound.enqueueControl(event);
+    }
+
+    /**
+     * 释放逻辑流占用的连接：多路复用连接只退订该流，普通连接写完后关闭
+     */
+    private static void release(String id, SseOutbound outbound) {
+        SseDelta.reset(outbound.deltaScope(id));
+        if (outbound.isMultiplexed()) {
+            SESSION.remove(id, outbound.getEmitter());
+            outbound.getStreams().remove(id);
+            outbound.enqueueControl(SseEmitter.event().name("unsubscribed").data(id));
+        } else {
+            EMITTER_IDS.remove(outbound.getEmitter().hashCode());
+            outbound.close();
+        }
+    }
+
+    /**
+     * 物理连接关闭时解除其上全部逻辑流的登记
+     */
+    private static void detachStreams(SseOutbound outbound) {
+        for (String id : outbound.getStreams()) {
+            if (OUTBOUND.remove(id, outbound)) {
+                SESSION.remove(id, outbound.getEmitter());
+            }
+            SseDelta.reset(outbound.deltaScope(id));
+        }
+        outbound.getStreams().clear();
+    }
+
+    /**
+     * 当前连接的结果是否需要客户端确认
+     *
+     * @param id 客户端ID
+     * @return 需要确认返回true，连接不存在返回false
+     */
+    public static boolean isAckRequired(String id) {
+        final SseOutbound outbound = OUTBOUND.get(id);
+        return outbound != null && outbound.isAck();
+    }
+    
     /**
      * 获取当前活跃的SSE会话数
      * @return 活跃会话数
@@ -3,6 +3,7 @@ package cn.zuster.sse.task;
 import cn.zuster.sse.session.SseSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Date;
 
@@ -17,14 +18,29 @@ public class HeartBeatTask implements Runnable {
 
     private final String clientId;
 
+    /**
+     * 是否为多路复用连接，此时clientId为物理连接ID，所有逻辑流共用一个心跳
+     */
+    private final boolean multiplexed;
+
     public HeartBeatTask(String clientId) {
+        this(clientId, false);
+    }
+
+    public HeartBeatTask(String clientId, boolean multiplexed) {
         // 这里可以按照业务传入需要的数据
         this.clientId = clientId;
+        this.multiplexed = multiplexed;
     }
 
     @Override
     public void run() {
-        logger.info("MSG: SseHeartbeat | ID: {} | Date: {}", clientId, new Date());
-        SseSession.send(clientId, "ping");
+        logger.info("MSG: SseHeartbeat | ID: {} | Mux: {} | Date: {}", clientId, multiplexed, new Date());
+        // 心跳走控制通道，不会被大数据帧阻塞
+        if (multiplexed) {
+            SseSession.sendMuxControl(clientId, SseEmitter.event().data("ping"));
+        } else {
+            SseSession.sendControl(clientId, SseEmitter.event().data("ping"));
+        }
     }
 }
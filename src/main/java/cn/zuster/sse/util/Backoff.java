@@ -0,0 +1,29 @@
+package cn.zuster.sse.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带抖动的指数退避
+ */
+public class Backoff {
+
+    private Backoff() {
+    }
+
+    /**
+     * 计算第attempt次失败后的等待时间：base * 2^(attempt-1)，不超过max，再在[delay/2, delay]之间随机，
+     * 避免大量客户端或节点同时重试
+     *
+     * @param base    首次重试间隔
+     * @param max     最大重试间隔，小于base时按base
+     * @param attempt 连续失败次数，从1开始
+     * @return 等待毫秒数
+     */
+    public static long jitteredMillis(Duration base, Duration max, int attempt) {
+        long baseMs = base.toMillis();
+        long maxMs = Math.max(baseMs, max.toMillis());
+        long delayMs = Math.min(maxMs, baseMs << Math.min(Math.max(attempt - 1, 0), 20));
+        return delayMs / 2 + ThreadLocalRandom.current().nextLong(delayMs / 2 + 1);
+    }
+}
@@ -0,0 +1,252 @@
+package cn.zuster.sse.util;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 按事件边界刷新的gzip输出流
+ *
+ * 整个连接复用一个Deflater，压缩字典在事件之间保留，重复度高的JSON事件压缩率很高；
+ * 每个事件结束时（flushEvent）执行SYNC_FLUSH，客户端可以立即解出完整事件。
+ * SseEmitter按事件的各个部分（id/event头、数据、结尾空行）分别flush，
+ * 只有已缓冲的数据以事件结尾的空行（\n\n）结束时才算一个完整事件，各部分合在一起压缩。
+ * 小于阈值的事件以不压缩的stored块写出，避免心跳等小帧浪费CPU；
+ * 压缩级别在事件的数据送入Deflater之前切换，不会用上一个事件的级别压缩当前事件。
+ */
+public class GzipEventOutputStream extends ServletOutputStream {
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final int level;
+    private final int threshold;
+
+    /**
+     * 当前事件未压缩的数据，大小即单连接的缓冲上限
+     */
+    private final byte[] pending;
+    private int pendingCount = 0;
+    private final byte[] buffer = new byte[8192];
+
+    private int currentLevel;
+    private long eventBytes = 0;
+    private boolean eventFed = false;
+    private int lastByte = -1;
+    private int lastButOneByte = -1;
+    private long rawBytes = 0;
+    private long compressedBytes = 0;
+    private boolean headerWritten = false;
+    private boolean finished = false;
+    private boolean ended = false;
+
+    /**
+     * @param out        底层输出流
+     * @param level      压缩级别
+     * @param threshold  小于该字节数的事件不压缩
+     * @param bufferSize 单个事件的缓冲上限，超过后提前送入Deflater
+     */
+    public GzipEventOutputStream(OutputStream out, int level, int threshold, int bufferSize) {
+        this.out = out;
+        this.level = level;
+        this.currentLevel = level;
+        this.threshold = threshold;
+        this.pending = new byte[bufferSize];
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len <= 0) {
+            return;
+        }
+        crc.update(b, off, len);
+        rawBytes += len;
+        eventBytes += len;
+        lastButOneByte = len > 1 ? b[off + len - 2] : lastByte;
+        lastByte = b[off + len - 1];
+        if (pendingCount + len > pending.length) {
+            // 超出缓冲上限，先送入Deflater，不刷新
+            deflatePending(Deflater.NO_FLUSH);
+            if (len >= pending.length) {
+                deflate(b, off, len, Deflater.NO_FLUSH);
+                return;
+            }
+        }
+        System.arraycopy(b, off, pending, pendingCount, len);
+        pendingCount += len;
+    }
+
+    /**
+     * 只缓冲，由flushEvent决定刷新时机；消息转换器每写一段都会调用flush
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * 事件边界：已缓冲的数据以空行结束时压缩并SYNC_FLUSH当前事件，否则继续缓冲
+     *
+     * @throws IOException 写出失败
+     */
+    public synchronized void flushEvent() throws IOException {
+        if (finished || eventBytes == 0 || lastByte != '\n' || lastButOneByte != '\n') {
+            return;
+        }
+        deflatePending(Deflater.SYNC_FLUSH);
+        eventBytes = 0;
+        eventFed = false;
+        out.flush();
+    }
+
+    /**
+     * 写出剩余数据和gzip尾部，不关闭底层流
+     *
+     * @throws IOException 写出失败
+     */
+    public synchronized void finish() throws IOException {
+        if (finished || ended) {
+            return;
+        }
+        deflatePending(Deflater.NO_FLUSH);
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(Deflater.NO_FLUSH);
+        }
+        writeHeaderIfNeeded();
+        int crcValue = (int) crc.getValue();
+        int size = (int) rawBytes;
+        byte[] trailer = {
+                (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+                (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+        };
+        out.write(trailer);
+        compressedBytes += trailer.length;
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * 释放Deflater的native内存，可重复调用
+     *
+     * @return 首次释放返回true
+     */
+    public synchronized boolean end() {
+        if (ended) {
+            return false;
+        }
+        ended = true;
+        deflater.end();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            end();
+            out.close();
+        }
+    }
+
+    public synchronized long getRawBytes() {
+        return rawBytes;
+    }
+
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !(out instanceof ServletOutputStream) || ((ServletOutputStream) out).isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        if (out instanceof ServletOutputStream) {
+            ((ServletOutputStream) out).setWriteListener(writeListener);
+        } else {
+            throw new UnsupportedOperationException("WriteListener not supported");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished || ended) {
+            throw new IOException("Gzip event stream already closed");
+        }
+    }
+
+    private void deflatePending(int flush) throws IOException {
+        deflate(pending, 0, pendingCount, flush);
+        pendingCount = 0;
+    }
+
+    private void deflate(byte[] b, int off, int len, int flush) throws IOException {
+        if (len > 0) {
+            applyEventLevel();
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+        if (flush == Deflater.SYNC_FLUSH) {
+            int count;
+            do {
+                count = drain(Deflater.SYNC_FLUSH);
+            } while (count == buffer.length);
+        }
+    }
+
+    /**
+     * 事件的第一段数据送入Deflater前切换压缩级别
+     *
+     * Deflater.setLevel在下一次deflate时才生效，且已送入的数据仍按旧级别压缩，
+     * 因此先在没有输入时执行一次deflate让新级别生效，再送入当前事件的数据
+     */
+    private void applyEventLevel() throws IOException {
+        if (eventFed) {
+            return;
+        }
+        eventFed = true;
+        int eventLevel = eventBytes < threshold ? Deflater.NO_COMPRESSION : level;
+        if (eventLevel != currentLevel) {
+            deflater.setLevel(eventLevel);
+            currentLevel = eventLevel;
+            deflater.setInput(buffer, 0, 0);
+            drain(Deflater.NO_FLUSH);
+        }
+    }
+
+    private int drain(int flush) throws IOException {
+        int count = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (count > 0) {
+            writeHeaderIfNeeded();
+            out.write(buffer, 0, count);
+            compressedBytes += count;
+        }
+        return count;
+    }
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (!headerWritten) {
+            out.write(GZIP_HEADER);
+            compressedBytes += GZIP_HEADER.length;
+            headerWritten = true;
+        }
+    }
+}
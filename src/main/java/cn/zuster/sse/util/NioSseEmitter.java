@@ -0,0 +1,399 @@
+package cn.zuster.sse.util;
+
+import cn.zuster.sse.config.SseProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 基于Servlet 3.1非阻塞I/O的SseEmitter
+ *
+ * 不经过Spring MVC的返回值处理，直接持有AsyncContext并注册WriteListener：
+ * - send只把事件编码后追加到连接自己的直接内存缓冲区，不会阻塞调用线程
+ * - 绑定的事件循环在isReady()为true时才写出，不可写时等容器回调onWritePossible
+ * - 缓冲区超过 sse.nio.max-buffer-size 视为慢客户端，直接结束该连接并触发错误回调，send抛出IOException
+ * - 带回调的send在数据写到输出流并flush之后才回调写出成功，连接失败或关闭时未写出的数据回调失败，
+ *   缓冲区中的数据不会被当作已送达
+ *
+ * 回调（onCompletion、onTimeout、onError）由AsyncListener触发，用法与普通SseEmitter相同。
+ */
+public class NioSseEmitter extends SseEmitter {
+    private static final Logger logger = LoggerFactory.getLogger(NioSseEmitter.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /**
+     * 每个事件循环线程一个中转数组，ServletOutputStream只接受byte[]
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final ExecutorService loop;
+    private final int maxBufferSize;
+
+    /**
+     * 未写出的数据，处于写入模式（position为已缓冲字节数）
+     */
+    private ByteBuffer pending;
+
+    private final List<Runnable> completionCallbacks = new CopyOnWriteArrayList<>();
+    private final List<Runnable> timeoutCallbacks = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Throwable>> errorCallbacks = new CopyOnWriteArrayList<>();
+
+    /**
+     * 等待写出的回调，按缓冲位置排序
+     */
+    private final Queue<FlushCallback> flushCallbacks = new ArrayDeque<>();
+
+    /**
+     * 累计放入缓冲区的字节数
+     */
+    private long parkedBytes = 0;
+
+    /**
+     * 连接已失败或关闭，不再接收回调
+     */
+    private boolean parkClosed = false;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final AtomicBoolean errorNotified = new AtomicBoolean(false);
+    private volatile boolean closing = false;
+    private volatile Throwable failure;
+
+    // 以下两个字段只在事件循环线程中读写
+    private boolean dirty = false;
+    private long writtenBytes = 0;
+
+    private NioSseEmitter(AsyncContext asyncContext, ServletOutputStream out, int bufferSize, int maxBufferSize) {
+        super(0L);
+        this.asyncContext = asyncContext;
+        this.out = out;
+        this.loop = SseEventLoop.next();
+        this.pending = ByteBuffer.allocateDirect(bufferSize);
+        this.maxBufferSize = Math.max(bufferSize, maxBufferSize);
+    }
+
+    /**
+     * 开启异步请求并切换为非阻塞输出
+     *
+     * @param request  请求
+     * @param response 响应
+     * @return emitter
+     * @throws IOException 获取输出流失败
+     */
+    public static NioSseEmitter open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SseProperties.Nio tuning = SseProperties.current().getNio();
+        response.setContentType(SseEmitterUTF8.UTF8_TEXT_EVENT_STREAM.toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // 与start接口一致，永不超时
+        asyncContext.setTimeout(0);
+        NioSseEmitter emitter = new NioSseEmitter(asyncContext, response.getOutputStream(),
+                (int) tuning.getBufferSize().toBytes(), (int) tuning.getMaxBufferSize().toBytes());
+        asyncContext.addListener(emitter.new Listener());
+        // 注册后容器会立即回调一次onWritePossible
+        emitter.out.setWriteListener(emitter.new Writer());
+        ACTIVE.incrementAndGet();
+        return emitter;
+    }
+
+    /**
+     * 当前非阻塞连接数
+     *
+     * @return 连接数
+     */
+    public static int getActiveCount() {
+        return ACTIVE.get();
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+        send(builder, null, null);
+    }
+
+    /**
+     * 发送事件，数据写到输出流并flush后在事件循环线程中回调
+     *
+     * @param builder   事件
+     * @param onFlushed 已写出，可以为null
+     * @param onFailed  连接失败或关闭，数据未写出，可以为null
+     * @throws IOException 连接已失败或缓冲区超限，此时不会回调
+     */
+    public void send(SseEventBuilder builder, Runnable onFlushed, Runnable onFailed) throws IOException {
+        if (failure != null) {
+            throw new IOException("Connection failed: " + failure.getMessage(), failure);
+        }
+        if (closing || finished.get()) {
+            throw new IllegalStateException("NioSseEmitter has already completed");
+        }
+        StringBuilder text = new StringBuilder();
+        for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+            Object data = part.getData();
+            text.append(data instanceof CharSequence ? (CharSequence) data : MAPPER.writeValueAsString(data));
+        }
+        try {
+            park(text.toString().getBytes(StandardCharsets.UTF_8), onFlushed, onFailed);
+        } catch (IOException e) {
+            // 慢客户端：结束连接，由错误回调和完成回调清理会话和心跳；在park的锁外执行回调
+            fail(e);
+            throw e;
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public synchronized void complete() {
+        // 已缓冲的数据写完后再结束
+        closing = true;
+        scheduleFlush();
+    }
+
+    @Override
+    public synchronized void completeWithError(Throwable ex) {
+        closing = true;
+        finish();
+    }
+
+    @Override
+    public synchronized void onTimeout(Runnable callback) {
+        timeoutCallbacks.add(callback);
+    }
+
+    @Override
+    public synchronized void onError(Consumer<Throwable> callback) {
+        errorCallbacks.add(callback);
+    }
+
+    @Override
+    public synchronized void onCompletion(Runnable callback) {
+        completionCallbacks.add(callback);
+    }
+
+    private synchronized void park(byte[] bytes, Runnable onFlushed, Runnable onFailed) throws IOException {
+        if (parkClosed) {
+            throw new IOException("NioSseEmitter connection closed");
+        }
+        if (pending.remaining() < bytes.length) {
+            int needed = pending.position() + bytes.length;
+            if (needed > maxBufferSize) {
+                throw new IOException("Slow consumer, buffered " + pending.position() + " bytes");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(maxBufferSize, Math.max(needed, pending.capacity() * 2)));
+            // Java 9起flip()返回ByteBuffer，转为Buffer调用，Java 8上也能运行
+            ((Buffer) pending).flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(bytes);
+        parkedBytes += bytes.length;
+        if (onFlushed != null || onFailed != null) {
+            flushCallbacks.add(new FlushCallback(parkedBytes, onFlushed, onFailed));
+        }
+    }
+
+    /**
+     * 从缓冲区取出一段数据
+     *
+     * @return 字节数，没有数据返回0
+     */
+    private synchronized int take(byte[] scratch) {
+        if (pending.position() == 0) {
+            return 0;
+        }
+        ((Buffer) pending).flip();
+        int count = Math.min(pending.remaining(), scratch.length);
+        pending.get(scratch, 0, count);
+        pending.compact();
+        return count;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    /**
+     * 在事件循环线程中执行，输出流不可写时立即返回，等待onWritePossible
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (finished.get()) {
+            return;
+        }
+        byte[] scratch = SCRATCH.get();
+        try {
+            while (out.isReady()) {
+                int count = take(scratch);
+                if (count > 0) {
+                    out.write(scratch, 0, count);
+                    writtenBytes += count;
+                    dirty = true;
+                } else if (dirty) {
+                    out.flush();
+                    dirty = false;
+                    flushed(writtenBytes);
+                } else {
+                    if (closing) {
+                        finish();
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 回调已写出到position的数据
+     */
+    private void flushed(long position) {
+        List<FlushCallback> done = new ArrayList<>();
+        synchronized (this) {
+            while (!flushCallbacks.isEmpty() && flushCallbacks.peek().position <= position) {
+                done.add(flushCallbacks.poll());
+            }
+        }
+        for (FlushCallback callback : done) {
+            if (callback.onFlushed != null) {
+                callback.onFlushed.run();
+            }
+        }
+    }
+
+    /**
+     * 丢弃未写出的数据，回调全部失败，之后的send直接抛出异常
+     */
+    private void failParked() {
+        List<FlushCallback> failed;
+        synchronized (this) {
+            parkClosed = true;
+            failed = new ArrayList<>(flushCallbacks);
+            flushCallbacks.clear();
+        }
+        for (FlushCallback callback : failed) {
+            if (callback.onFailed != null) {
+                callback.onFailed.run();
+            }
+        }
+    }
+
+    /**
+     * send、写出、WriteListener、AsyncListener都可能报错，错误回调只执行一次，
+     * 避免按clientId清理会话的回调误删重连后的新会话
+     */
+    private void fail(Throwable t) {
+        if (!errorNotified.compareAndSet(false, true)) {
+            return;
+        }
+        failure = t;
+        logger.warn("MSG: Non-blocking SSE write error | EmitterHash: {} | Error: {}", hashCode(), t.getMessage());
+        failParked();
+        for (Consumer<Throwable> callback : errorCallbacks) {
+            callback.accept(t);
+        }
+        finish();
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // 容器已结束该请求
+            }
+        }
+    }
+
+    private void onClosed() {
+        synchronized (this) {
+            // 释放直接内存
+            pending = ByteBuffer.allocate(0);
+        }
+        failParked();
+        ACTIVE.decrementAndGet();
+        for (Runnable callback : completionCallbacks) {
+            callback.run();
+        }
+    }
+
+    private static class FlushCallback {
+        private final long position;
+        private final Runnable onFlushed;
+        private final Runnable onFailed;
+
+        FlushCallback(long position, Runnable onFlushed, Runnable onFailed) {
+            this.position = position;
+            this.onFlushed = onFlushed;
+            this.onFailed = onFailed;
+        }
+    }
+
+    private class Writer implements WriteListener {
+        @Override
+        public void onWritePossible() {
+            // 回到绑定的事件循环写出，保证同一连接只有一个线程在写
+            scheduleFlush();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t);
+        }
+    }
+
+    private class Listener implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finished.set(true);
+            onClosed();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            for (Runnable callback : timeoutCallbacks) {
+                callback.run();
+            }
+            finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            Throwable t = event.getThrowable();
+            fail(t != null ? t : new IOException("Async request error"));
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
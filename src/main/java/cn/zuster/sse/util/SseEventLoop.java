@@ -0,0 +1,49 @@
+package cn.zuster.sse.util;
+
+import cn.zuster.sse.config.SseProperties;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非阻塞SSE连接的事件循环
+ *
+ * 少量单线程循环，每个连接固定绑定一个循环，连接上的所有写出都在该线程中执行，不需要加锁；
+ * 写出只在输出流可写时进行，不可写时立即返回，不占用线程等待。
+ * 线程数在首次使用时读取 sse.nio.event-loop-threads，修改后需要重启。
+ */
+public class SseEventLoop {
+
+    private static final ExecutorService[] LOOPS;
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    static {
+        LOOPS = new ExecutorService[Math.max(1, SseProperties.current().getNio().getEventLoopThreads())];
+        for (int i = 0; i < LOOPS.length; i++) {
+            final String name = "sse-event-loop-" + i;
+            LOOPS[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private SseEventLoop() {
+    }
+
+    /**
+     * 轮询分配一个事件循环
+     *
+     * @return 事件循环
+     */
+    public static ExecutorService next() {
+        return LOOPS[(NEXT.getAndIncrement() & Integer.MAX_VALUE) % LOOPS.length];
+    }
+
+    public static int size() {
+        return LOOPS.length;
+    }
+}
@@ -0,0 +1,125 @@
+package cn.zuster.sse;
+
+import cn.zuster.sse.util.GzipEventOutputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * SSE 压缩传输带宽/CPU对比
+ *
+ * 模拟fanOut个同时在线的连接，每轮给所有连接各推送一个心跳和一个与AsyncDataTask结果结构相同的事件，
+ * 统计不压缩与各压缩级别下的出站字节数和CPU时间。
+ * 写入方式与 /sse/start?compress=true 相同：SseEmitter把事件拆成头部、数据、结尾空行分别写出，
+ * 每写一部分调用一次flushBuffer（即flushEvent）。
+ *
+ * 运行参数：[fanOut] [rounds] [minCompressSize]，minCompressSize默认与 sse.compression.min-compress-size 相同
+ */
+public class SseCompressionBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * 不压缩；不能用-1，Deflater.DEFAULT_COMPRESSION就是-1
+     */
+    private static final int IDENTITY = Integer.MIN_VALUE;
+
+    public static void main(String[] args) throws IOException {
+        int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threshold = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+
+        System.out.printf("fanOut=%d rounds=%d minCompressSize=%d%n", fanOut, rounds, threshold);
+        System.out.printf("%-12s %14s %14s %8s %12s%n", "mode", "raw(bytes)", "wire(bytes)", "ratio", "cpu(ms)");
+        run("identity", fanOut, rounds, IDENTITY, threshold);
+        run("gzip-1", fanOut, rounds, Deflater.BEST_SPEED, threshold);
+        run("gzip-6", fanOut, rounds, 6, threshold);
+        run("gzip-9", fanOut, rounds, Deflater.BEST_COMPRESSION, threshold);
+    }
+
+    private static void run(String mode, int fanOut, int rounds, int level, int threshold) throws IOException {
+        CountingOutputStream sink = new CountingOutputStream();
+        GzipEventOutputStream[] streams = new GzipEventOutputStream[fanOut];
+        if (level != IDENTITY) {
+            for (int i = 0; i < fanOut; i++) {
+                streams[i] = new GzipEventOutputStream(sink, level, threshold, 16 * 1024);
+            }
+        }
+
+        long raw = 0;
+        long cpuStart = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < fanOut; i++) {
+                raw += send(sink, streams[i], heartbeat());
+                raw += send(sink, streams[i], result(i, round));
+            }
+        }
+        if (level != IDENTITY) {
+            for (GzipEventOutputStream stream : streams) {
+                stream.finish();
+                stream.end();
+            }
+        }
+        long cpuMs = (THREAD_MX_BEAN.getCurrentThreadCpuTime() - cpuStart) / 1_000_000;
+
+        System.out.printf("%-12s %14d %14d %8.3f %12d%n", mode, raw, sink.count, (double) sink.count / raw, cpuMs);
+    }
+
+    /**
+     * 按SseEmitter的方式逐个部分写出并刷新
+     *
+     * @return 未压缩字节数
+     */
+    private static long send(OutputStream sink, GzipEventOutputStream stream, List<String> parts) throws IOException {
+        long raw = 0;
+        for (String part : parts) {
+            byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+            raw += bytes.length;
+            if (stream == null) {
+                sink.write(bytes, 0, bytes.length);
+            } else {
+                stream.write(bytes, 0, bytes.length);
+                stream.flushEvent();
+            }
+        }
+        return raw;
+    }
+
+    private static List<String> heartbeat() {
+        return Arrays.asList("data:", "ping", "\n\n");
+    }
+
+    private static List<String> result(int client, int round) throws IOException {
+        Map<String, Object> resultData = new HashMap<>();
+        resultData.put("status", "completed");
+        resultData.put("message", "异步任务处理完成");
+        resultData.put("timestamp", System.currentTimeMillis());
+        resultData.put("data", "这是异步处理的结果数据");
+        resultData.put("clientId", "client-" + client);
+        resultData.put("round", round);
+        return Arrays.asList("id:" + round + "\ndata:", MAPPER.writeValueAsString(resultData), "\n\n");
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package cn.zuster.sse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 节点启动耗时对比
+ *
+ * 每次启动一个新的JVM进程运行SseApplication，从进程启动开始计时，
+ * 不断请求 /sse/start 直到收到第一个connect事件，即首个连接被接收的时间。
+ *
+ * 运行参数：[runs] [port] [profile...]，默认 3 18081 lean
+ * 额外JVM参数通过系统属性 bench.jvmArgs 传入，例如 -Dbench.jvmArgs="-XX:SharedArchiveFile=sse.jsa"
+ */
+public class SseStartupBenchmark {
+    private static final long TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 18081;
+        List<String> profiles = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : Arrays.asList("lean");
+
+        System.out.printf("runs=%d port=%d jvmArgs=%s%n", runs, port, System.getProperty("bench.jvmArgs", ""));
+        System.out.printf("%-12s %10s %10s %10s%n", "profile", "min(ms)", "avg(ms)", "max(ms)");
+        for (String profile : profiles) {
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            long total = 0;
+            for (int i = 0; i < runs; i++) {
+                long elapsed = run(profile, port, i);
+                min = Math.min(min, elapsed);
+                max = Math.max(max, elapsed);
+                total += elapsed;
+            }
+            System.out.printf("%-12s %10d %10d %10d%n", profile, min, total / runs, max);
+        }
+    }
+
+    private static long run(String profile, int port, int index) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String jvmArgs = System.getProperty("bench.jvmArgs", "").trim();
+        if (!jvmArgs.isEmpty()) {
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SseApplication.class.getName());
+        command.add("--spring.profiles.active=" + profile);
+        command.add("--server.port=" + port);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File("startup-bench-" + profile + "-" + index + ".log"))
+                .start();
+        try {
+            while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with code " + process.exitValue()
+                            + ", see startup-bench-" + profile + "-" + index + ".log");
+                }
+                if (firstConnect(port, "startup-bench-" + index)) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                Thread.sleep(20);
+            }
+            throw new IllegalStateException("No connect event within " + TIMEOUT_MS + "ms");
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * 请求/sse/start并等待connect事件
+     *
+     * @return 收到connect事件返回true，连接被拒绝返回false
+     */
+    private static boolean firstConnect(int port, String clientId) {
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL("http://localhost:" + port + "/sse/start?clientId=" + clientId);
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(500);
+            connection.setReadTimeout((int) TIMEOUT_MS);
+            if (connection.getResponseCode() != 200) {
+                return false;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("event:connect")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
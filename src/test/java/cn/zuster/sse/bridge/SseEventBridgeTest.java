@@ -0,0 +1,133 @@
+package cn.zuster.sse.bridge;
+
+import cn.zuster.sse.config.SseProperties;
+import cn.zuster.sse.delivery.SseDelivery;
+import cn.zuster.sse.session.SseSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 事件桥接offset提交
+ */
+public class SseEventBridgeTest {
+    private static final long WAIT_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private SseProperties properties;
+    private InMemoryEventSource source;
+    private SseEventBridge bridge;
+
+    @BeforeEach
+    public void setUp() {
+        properties = new SseProperties();
+        properties.getBridge().setEnabled(true);
+        properties.getBridge().setPollTimeout(Duration.ofMillis(10));
+        source = new InMemoryEventSource(properties.getBridge().getCapacity());
+        bridge = new SseEventBridge();
+        ReflectionTestUtils.setField(bridge, "properties", properties);
+        ReflectionTestUtils.setField(bridge, "source", source);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bridge.stop();
+    }
+
+    @Test
+    public void offlineClientKeepsOffsetUncommitted() throws InterruptedException {
+        bridge.start();
+        source.publish("bridge-offline", "topic", "data");
+
+        await(() -> stat("handedOff") == 1L);
+        // 多轮拉取、提交之后仍未提交
+        Thread.sleep(200);
+        assertEquals(-1L, source.getCommittedOffset());
+        assertEquals(1L, stat("inFlight"));
+        assertTrue(SseDelivery.hasPending("bridge-offline"));
+    }
+
+    @Test
+    public void writtenRecordIsCommitted() {
+        bridge.start();
+        SseSession.add("bridge-online", new SseEmitter(0L));
+        try {
+            source.publish("bridge-online", "topic", "data");
+
+            await(() -> source.getCommittedOffset() == 0L);
+            assertEquals(1L, stat("written"));
+            assertEquals(0L, stat("inFlight"));
+        } finally {
+            SseSession.del("bridge-online");
+        }
+    }
+
+    @Test
+    public void offlineRecordHoldsBackLaterOffsetsUntilDelivered() throws InterruptedException {
+        bridge.start();
+        SseSession.add("bridge-later", new SseEmitter(0L));
+        try {
+            source.publish("bridge-reconnect", "topic", "data");
+            source.publish("bridge-later", "topic", "data");
+
+            await(() -> stat("written") == 1L);
+            Thread.sleep(200);
+            assertEquals(-1L, source.getCommittedOffset());
+
+            // 客户端上线后重发，写出即送达，两条都可以提交
+            SseSession.add("bridge-reconnect", new SseEmitter(0L));
+            SseDelivery.redeliver("bridge-reconnect");
+            await(() -> source.getCommittedOffset() == 1L);
+            assertEquals(0L, stat("inFlight"));
+        } finally {
+            SseSession.del("bridge-later");
+            SseSession.del("bridge-reconnect");
+        }
+    }
+
+    @Test
+    public void offlineClientDoesNotBlockOtherClients() {
+        properties.getBridge().setMaxInFlight(1);
+        bridge.start();
+        SseSession.add("bridge-fast", new SseEmitter(0L));
+        try {
+            for (int i = 0; i < 3; i++) {
+                source.publish("bridge-away", "topic", "data-" + i);
+            }
+            source.publish("bridge-fast", "topic", "data");
+
+            // 交给结果投递的记录让出名额，后面的客户端照常写出，offset停在离线客户端的第一条之前
+            await(() -> stat("written") == 1L);
+            assertEquals(3L, stat("handedOff"));
+            assertEquals(0L, stat("dispatching"));
+            assertEquals(-1L, source.getCommittedOffset());
+        } finally {
+            SseSession.del("bridge-fast");
+        }
+    }
+
+    private long stat(String name) {
+        return ((Number) bridge.stats().get(name)).longValue();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within " + WAIT_MS + "ms");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cn.zuster.sse.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * JSON差异计算
+ */
+public class JsonDiffTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void unchangedProducesNoOps() throws IOException {
+        assertEquals(0, diff("{\"a\":1,\"b\":{\"c\":\"x\"}}", "{\"b\":{\"c\":\"x\"},\"a\":1}").size());
+    }
+
+    @Test
+    public void addRemoveAndReplaceFields() throws IOException {
+        ArrayNode ops = diff("{\"keep\":1,\"gone\":true,\"changed\":\"old\"}",
+                "{\"keep\":1,\"changed\":\"new\",\"added\":[1,2]}");
+
+        assertEquals(json("[{\"op\":\"remove\",\"path\":\"/gone\"},"
+                + "{\"op\":\"replace\",\"path\":\"/changed\",\"value\":\"new\"},"
+                + "{\"op\":\"add\",\"path\":\"/added\",\"value\":[1,2]}]"), ops);
+    }
+
+    @Test
+    public void nestedObjectsAreDiffedFieldByField() throws IOException {
+        ArrayNode ops = diff("{\"data\":{\"status\":\"running\",\"progress\":10}}",
+                "{\"data\":{\"status\":\"running\",\"progress\":20}}");
+
+        assertEquals(json("[{\"op\":\"replace\",\"path\":\"/data/progress\",\"value\":20}]"), ops);
+    }
+
+    @Test
+    public void arraysAreReplacedWhole() throws IOException {
+        ArrayNode ops = diff("{\"items\":[1,2,3]}", "{\"items\":[1,2,4]}");
+
+        assertEquals(json("[{\"op\":\"replace\",\"path\":\"/items\",\"value\":[1,2,4]}]"), ops);
+    }
+
+    @Test
+    public void fieldNamesAreEscaped() throws IOException {
+        ArrayNode ops = diff("{\"a/b\":1,\"m~n\":{\"~/\":1}}", "{\"a/b\":2,\"m~n\":{\"~/\":2}}");
+
+        // 先转义~再转义/，"~/"不能被转成"~01"
+        assertEquals(json("[{\"op\":\"replace\",\"path\":\"/a~1b\",\"value\":2},"
+                + "{\"op\":\"replace\",\"path\":\"/m~0n/~0~1\",\"value\":2}]"), ops);
+    }
+
+    @Test
+    public void rootIsReplacedWhenTypeChanges() throws IOException {
+        assertEquals(json("[{\"op\":\"replace\",\"path\":\"\",\"value\":\"done\"}]"), diff("{\"a\":1}", "\"done\""));
+        assertEquals(json("[{\"op\":\"replace\",\"path\":\"\",\"value\":{\"a\":1}}]"), diff("[1]", "{\"a\":1}"));
+    }
+
+    private static ArrayNode diff(String source, String target) throws IOException {
+        return JsonDiff.diff(json(source), json(target));
+    }
+
+    private static JsonNode json(String text) throws IOException {
+        return MAPPER.readTree(text);
+    }
+}
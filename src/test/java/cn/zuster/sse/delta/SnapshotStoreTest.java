@@ -0,0 +1,86 @@
+package cn.zuster.sse.delta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 快照存储容量控制
+ */
+public class SnapshotStoreTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverCapacity() {
+        long bytes = snapshot("c1", 0).bytes;
+        SnapshotStore store = new SnapshotStore(3 * bytes);
+        store.put("c1", "a", snapshot("c1", 1));
+        store.put("c1", "b", snapshot("c1", 2));
+        store.put("c2", "a", snapshot("c2", 3));
+        // 访问后c1/a变为最近使用，淘汰顺序为c1/b、c2/a
+        assertNotNull(store.get("c1", "a"));
+
+        store.put("c2", "b", snapshot("c2", 4));
+
+        assertEquals(3, store.size());
+        assertEquals(3 * bytes, store.getUsedBytes());
+        assertNull(store.get("c1", "b"));
+        assertNotNull(store.get("c1", "a"));
+        assertNotNull(store.get("c2", "a"));
+        assertNotNull(store.get("c2", "b"));
+    }
+
+    @Test
+    public void shrinkingCapacityEvictsOnNextPut() {
+        long bytes = snapshot("c1", 0).bytes;
+        SnapshotStore store = new SnapshotStore(10 * bytes);
+        for (int i = 0; i < 5; i++) {
+            store.put("c1", "k" + i, snapshot("c1", i));
+        }
+
+        store.setMaxBytes(2 * bytes);
+        store.put("c1", "k5", snapshot("c1", 5));
+
+        assertEquals(2, store.size());
+        assertNotNull(store.get("c1", "k4"));
+        assertNotNull(store.get("c1", "k5"));
+    }
+
+    @Test
+    public void replacingSnapshotKeepsAccounting() {
+        SnapshotStore store = new SnapshotStore(Long.MAX_VALUE);
+        store.put("c1", "a", new SnapshotStore.Snapshot("c1", JsonNodeFactory.instance.textNode("short"), 0));
+        SnapshotStore.Snapshot larger =
+                new SnapshotStore.Snapshot("c1", JsonNodeFactory.instance.textNode("a much longer value"), 1);
+
+        store.put("c1", "a", larger);
+
+        assertEquals(1, store.size());
+        assertEquals(larger.bytes, store.getUsedBytes());
+    }
+
+    @Test
+    public void removeClientReleasesOnlyItsSnapshots() {
+        SnapshotStore store = new SnapshotStore(Long.MAX_VALUE);
+        store.put("c1", "a", snapshot("c1", 1));
+        store.put("c1", "b", snapshot("c1", 2));
+        SnapshotStore.Snapshot other = snapshot("c2", 3);
+        store.put("c2", "a", other);
+
+        store.removeClient("c1");
+
+        assertEquals(1, store.size());
+        assertEquals(other.bytes, store.getUsedBytes());
+        assertNull(store.get("c1", "a"));
+        assertNotNull(store.get("c2", "a"));
+    }
+
+    private static SnapshotStore.Snapshot snapshot(String clientId, int value) {
+        // 相同结构的节点估算字节数相同
+        JsonNode node = JsonNodeFactory.instance.objectNode().put("value", value);
+        return new SnapshotStore.Snapshot(clientId, node, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package cn.zuster.sse.delta;
+
+import cn.zuster.sse.config.SseProperties;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 增量推送编码的关键帧节奏
+ */
+public class SseDeltaTest {
+    private static final String SCOPE = "delta-test#1";
+
+    private int keyframeInterval;
+
+    @BeforeEach
+    public void setUp() {
+        keyframeInterval = SseProperties.current().getDelta().getKeyframeInterval();
+        SseProperties.current().getDelta().setKeyframeInterval(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SseProperties.current().getDelta().setKeyframeInterval(keyframeInterval);
+        SseDelta.reset(SCOPE);
+    }
+
+    @Test
+    public void keyframeEveryInterval() {
+        StringBuilder kinds = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            kinds.append(kind(SseDelta.encode(SCOPE, "result", Collections.singletonMap("round", i))));
+        }
+
+        // 关键帧之后最多interval-1个patch
+        assertEquals("SPPSPPS", kinds.toString());
+    }
+
+    @Test
+    public void patchCarriesOnlyChangedFields() {
+        SseDelta.encode(SCOPE, "result", Collections.singletonMap("round", 1));
+        ObjectNode patch = SseDelta.encode(SCOPE, "result", Collections.singletonMap("round", 2));
+
+        assertEquals("patch", patch.get("delta").asText());
+        assertEquals("result", patch.get("key").asText());
+        assertEquals(1, patch.get("ops").size());
+        assertEquals("/round", patch.get("ops").get(0).get("path").asText());
+        assertEquals(2, patch.get("ops").get(0).get("value").asInt());
+    }
+
+    @Test
+    public void resetForcesKeyframe() {
+        SseDelta.encode(SCOPE, "result", Collections.singletonMap("round", 1));
+        SseDelta.reset(SCOPE);
+
+        assertEquals('S', kind(SseDelta.encode(SCOPE, "result", Collections.singletonMap("round", 2))));
+    }
+
+    @Test
+    public void keysHaveIndependentCadence() {
+        assertEquals('S', kind(SseDelta.encode(SCOPE, "a", Collections.singletonMap("v", 1))));
+        assertEquals('P', kind(SseDelta.encode(SCOPE, "a", Collections.singletonMap("v", 2))));
+        assertEquals('S', kind(SseDelta.encode(SCOPE, "b", Collections.singletonMap("v", 1))));
+        assertEquals('P', kind(SseDelta.encode(SCOPE, "b", Collections.singletonMap("v", 2))));
+    }
+
+    private static char kind(ObjectNode event) {
+        return "snapshot".equals(event.get("delta").asText()) ? 'S' : 'P';
+    }
+}
@@ -0,0 +1,38 @@
+package cn.zuster.sse.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 带抖动的指数退避
+ */
+public class BackoffTest {
+
+    @Test
+    public void delayDoublesWithinJitterRange() {
+        for (int attempt = 1; attempt <= 4; attempt++) {
+            long expected = 100L << (attempt - 1);
+            for (int i = 0; i < 100; i++) {
+                long delay = Backoff.jitteredMillis(Duration.ofMillis(100), Duration.ofSeconds(10), attempt);
+                assertTrue(delay >= expected / 2 && delay <= expected, "attempt " + attempt + " delay " + delay);
+            }
+        }
+    }
+
+    @Test
+    public void delayIsCappedAtMax() {
+        for (int i = 0; i < 100; i++) {
+            long delay = Backoff.jitteredMillis(Duration.ofMillis(100), Duration.ofSeconds(1), 1000);
+            assertTrue(delay >= 500 && delay <= 1000, "delay " + delay);
+        }
+    }
+
+    @Test
+    public void maxBelowBaseUsesBase() {
+        long delay = Backoff.jitteredMillis(Duration.ofSeconds(2), Duration.ofSeconds(1), 3);
+        assertTrue(delay >= 1000 && delay <= 2000, "delay " + delay);
+    }
+}
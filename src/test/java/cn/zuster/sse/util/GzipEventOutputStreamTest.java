@@ -0,0 +1,132 @@
+package cn.zuster.sse.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按事件刷新的gzip输出流
+ *
+ * 写入方式与SseEmitter相同：事件的每个部分写出后都调用一次flushEvent（即flushBuffer）
+ */
+public class GzipEventOutputStreamTest {
+    private static final int THRESHOLD = 32;
+
+    @Test
+    public void heartbeatsDoNotDisableCompressionOfResults() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        GzipEventOutputStream stream = new GzipEventOutputStream(wire, Deflater.BEST_SPEED, THRESHOLD, 16 * 1024);
+
+        for (int i = 0; i < 200; i++) {
+            sendEvent(stream, raw, "data:", "ping", "\n\n");
+            sendEvent(stream, raw, "id:" + i + "\ndata:", result(i), "\n\n");
+        }
+        stream.finish();
+        stream.end();
+
+        assertArrayEquals(raw.toByteArray(), gunzip(wire.toByteArray()));
+        double ratio = (double) wire.size() / raw.size();
+        assertTrue(ratio < 0.3, "wire/raw ratio " + ratio);
+    }
+
+    @Test
+    public void eachEventIsDecodableWhenFlushed() throws IOException, DataFormatException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        GzipEventOutputStream stream = new GzipEventOutputStream(wire, Deflater.BEST_SPEED, THRESHOLD, 1024);
+        Inflater inflater = new Inflater(true);
+        // 跳过gzip头
+        int consumed = 10;
+
+        for (int i = 0; i < 50; i++) {
+            // 大事件超过缓冲上限，会在事件中途送入Deflater
+            String data = i % 5 == 0 ? repeat(result(i), 40) : result(i);
+            sendEvent(stream, raw, "data:", "ping", "\n\n");
+            sendEvent(stream, raw, "id:" + i + "\ndata:", data, "\n\n");
+
+            byte[] compressed = wire.toByteArray();
+            inflater.setInput(compressed, consumed, compressed.length - consumed);
+            consumed = compressed.length;
+            inflateAll(inflater);
+            assertEquals(raw.size(), inflater.getBytesWritten(), "event " + i + " not fully flushed");
+        }
+        inflater.end();
+        stream.end();
+    }
+
+    @Test
+    public void partialEventIsNotFlushed() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        GzipEventOutputStream stream = new GzipEventOutputStream(wire, Deflater.BEST_SPEED, THRESHOLD, 16 * 1024);
+
+        write(stream, "id:1\ndata:");
+        stream.flushEvent();
+        write(stream, result(1));
+        stream.flushEvent();
+        assertEquals(0, wire.size());
+
+        write(stream, "\n\n");
+        stream.flushEvent();
+        assertTrue(wire.size() > 0);
+        stream.end();
+    }
+
+    private static void sendEvent(GzipEventOutputStream stream, ByteArrayOutputStream raw, String... parts)
+            throws IOException {
+        for (String part : parts) {
+            write(stream, part);
+            raw.write(part.getBytes(StandardCharsets.UTF_8));
+            stream.flushEvent();
+        }
+    }
+
+    private static void write(GzipEventOutputStream stream, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        stream.write(bytes, 0, bytes.length);
+    }
+
+    private static String result(int round) {
+        return "{\"status\":\"completed\",\"message\":\"异步任务处理完成\",\"timestamp\":" + (1610000000000L + round)
+                + ",\"data\":\"这是异步处理的结果数据\",\"clientId\":\"client-1\",\"round\":" + round + "}";
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+    private static void inflateAll(Inflater inflater) throws DataFormatException {
+        byte[] buffer = new byte[8192];
+        while (inflater.inflate(buffer) > 0) {
+            // 只统计解出的字节数
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+        return out.toByteArray();
+    }
+}